@@ -0,0 +1,309 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Content-addressed cache of analysis results in front of SyntaxAnalyzer.analyze(CharSequence, sink).
+// A block always gets the same diagnostics (every analysis starts from a clean state), so they are
+// stored under the SHA-256 of the block and replayed for every identical block, e.g. templated
+// exercises and boilerplate that is submitted over and over.
+// Two tiers, both bounded by size and dropping the least recently used results first: memory, and
+// optionally a directory with a file per result that survives restarts. Results found on disk are
+// brought into memory; the disk keeps its order across restarts through the files' modification times.
+// Disk entries: "SAC" + version byte, diagnostic count (int), then per diagnostic the code ordinal (byte),
+// line and column (int) and the message as an int byte length followed by UTF-8 bytes. The version
+// changes whenever the analyzer's results change, so stale results of an older analyzer are not read.
+public final class AnalysisCache {
+
+    static final int VERSION = 3;
+    private static final String SUFFIX = ".sac";
+    // Longer blocks are analyzed without the cache, they are rarely submitted twice
+    static final int MAX_BLOCK_LENGTH = 1024 * 1024;
+    // Rough heap cost of an entry and of each of its diagnostics, on top of the message characters
+    private static final int ENTRY_OVERHEAD = 160;
+    private static final int DIAGNOSTIC_OVERHEAD = 80;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+    private static final ThreadLocal<byte[]> HASH_BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long memoryBudget;
+    private long memoryUsed; // guarded by memory
+    private final LinkedHashMap<String, Diagnostic[]> memory = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final Path directory; // null without a disk tier
+    private final long diskBudget;
+    private long diskUsed; // guarded by disk
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(256, 0.75f, true); // key to file size
+
+    // A memory-only cache holding about memoryBudget bytes of results
+    public AnalysisCache(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        this.directory = null;
+        this.diskBudget = 0;
+    }
+
+    // A cache with a disk tier in directory, taking up at most diskBudget bytes there
+    public AnalysisCache(long memoryBudget, Path directory, long diskBudget) throws IOException {
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+        this.diskBudget = diskBudget;
+        Files.createDirectories(directory);
+
+        // Pick up the results of earlier runs, least recently used first, and drop what a run that
+        // was killed left half written
+        List<Path> files = new ArrayList<>();
+        List<Path> unfinished = new ArrayList<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            list.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    files.add(file);
+                } else if (name.endsWith(".tmp")) {
+                    unfinished.add(file);
+                }
+            });
+        }
+        for (Path file : unfinished) {
+            Files.deleteIfExists(file);
+        }
+        Map<Path, FileTime> used = new HashMap<>();
+        for (Path file : files) {
+            used.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort(Comparator.comparing(used::get));
+        synchronized (disk) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long size = Files.size(file);
+                disk.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                diskUsed += size;
+            }
+            evictDisk();
+        }
+    }
+
+    // Analyzes the block with the calling thread's analyzer, or replays the stored diagnostics of an
+    // identical block to the sink
+    public <S extends DiagnosticSink> S analyze(CharSequence code, S sink) {
+        if (code.length() > MAX_BLOCK_LENGTH) {
+            return SyntaxAnalyzer.forCurrentThread().analyze(code, sink);
+        }
+        String key = key(code);
+        Diagnostic[] stored = lookup(key);
+        if (stored != null) {
+            for (Diagnostic diagnostic : stored) {
+                sink.report(diagnostic.code, diagnostic.line, diagnostic.column, diagnostic.message);
+            }
+            return sink;
+        }
+
+        // The sink still gets every diagnostic as soon as it is produced
+        List<Diagnostic> produced = new ArrayList<>();
+        SyntaxAnalyzer.forCurrentThread().analyze(code, (diagnosticCode, line, column, message) -> {
+            produced.add(new Diagnostic(diagnosticCode, line, column, message));
+            sink.report(diagnosticCode, line, column, message);
+        });
+        store(key, produced.toArray(new Diagnostic[0]));
+        return sink;
+    }
+
+    public long memoryUsed() {
+        synchronized (memory) {
+            return memoryUsed;
+        }
+    }
+
+    public long diskUsed() {
+        synchronized (disk) {
+            return diskUsed;
+        }
+    }
+
+    private Diagnostic[] lookup(String key) {
+        Diagnostic[] stored;
+        synchronized (memory) {
+            stored = memory.get(key);
+        }
+        if (stored != null) {
+            AnalyzerMetrics.GLOBAL.cacheLookup(AnalyzerMetrics.CacheResult.MEMORY_HIT);
+            return stored;
+        }
+        stored = directory == null ? null : readFromDisk(key);
+        if (stored != null) {
+            putInMemory(key, stored);
+            AnalyzerMetrics.GLOBAL.cacheLookup(AnalyzerMetrics.CacheResult.DISK_HIT);
+            return stored;
+        }
+        AnalyzerMetrics.GLOBAL.cacheLookup(AnalyzerMetrics.CacheResult.MISS);
+        return null;
+    }
+
+    private void store(String key, Diagnostic[] diagnostics) {
+        putInMemory(key, diagnostics);
+        if (directory != null) {
+            writeToDisk(key, diagnostics);
+        }
+    }
+
+    private void putInMemory(String key, Diagnostic[] diagnostics) {
+        long size = memorySize(diagnostics);
+        if (size > memoryBudget) {
+            return;
+        }
+        synchronized (memory) {
+            Diagnostic[] replaced = memory.put(key, diagnostics);
+            if (replaced != null) {
+                memoryUsed -= memorySize(replaced);
+            }
+            memoryUsed += size;
+            Iterator<Diagnostic[]> eldest = memory.values().iterator();
+            while (memoryUsed > memoryBudget) {
+                memoryUsed -= memorySize(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    private static long memorySize(Diagnostic[] diagnostics) {
+        long size = ENTRY_OVERHEAD;
+        for (Diagnostic diagnostic : diagnostics) {
+            size += DIAGNOSTIC_OVERHEAD + 2L * diagnostic.message.length();
+        }
+        return size;
+    }
+
+    // A result that cannot be read counts as a miss and is dropped, the analysis then stores it again
+    private Diagnostic[] readFromDisk(String key) {
+        synchronized (disk) {
+            if (disk.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(key + SUFFIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            if (magic[0] != 'S' || magic[1] != 'A' || magic[2] != 'C' || magic[3] != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " cached result");
+            }
+            Diagnostic[] diagnostics = new Diagnostic[in.readInt()];
+            for (int i = 0; i < diagnostics.length; i++) {
+                Diagnostic.Code code = Diagnostic.Code.of(in.readUnsignedByte());
+                int line = in.readInt();
+                int column = in.readInt();
+                byte[] message = new byte[in.readInt()];
+                in.readFully(message);
+                diagnostics[i] = new Diagnostic(code, line, column, new String(message, StandardCharsets.UTF_8));
+            }
+            // Keeps its place in the eviction order after a restart
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return diagnostics;
+        } catch (IOException | RuntimeException e) {
+            removeFromDisk(key);
+            return null;
+        }
+    }
+
+    // Written next to the entry and moved in place, so other readers never see half a result. A result
+    // that cannot be written is only kept in memory.
+    private void writeToDisk(String key, Diagnostic[] diagnostics) {
+        Path file = directory.resolve(key + SUFFIX);
+        Path temporary = directory.resolve(key + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeBytes("SAC");
+                out.writeByte(VERSION);
+                out.writeInt(diagnostics.length);
+                for (Diagnostic diagnostic : diagnostics) {
+                    out.writeByte(diagnostic.code.ordinal());
+                    out.writeInt(diagnostic.line);
+                    out.writeInt(diagnostic.column);
+                    byte[] message = diagnostic.message.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(message.length);
+                    out.write(message);
+                }
+            }
+            long size = Files.size(temporary);
+            if (size > diskBudget) {
+                Files.delete(temporary);
+                return;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (disk) {
+                Long replaced = disk.put(key, size);
+                diskUsed += size - (replaced != null ? replaced : 0);
+                evictDisk();
+            }
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Nothing more to clean up
+            }
+        }
+    }
+
+    private void removeFromDisk(String key) {
+        synchronized (disk) {
+            Long size = disk.remove(key);
+            if (size != null) {
+                diskUsed -= size;
+            }
+        }
+        try {
+            Files.deleteIfExists(directory.resolve(key + SUFFIX));
+        } catch (IOException e) {
+            // Found again and replaced at the next start
+        }
+    }
+
+    // Called holding disk
+    private void evictDisk() {
+        Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+        while (diskUsed > diskBudget) {
+            Map.Entry<String, Long> entry = eldest.next();
+            diskUsed -= entry.getValue();
+            eldest.remove();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey() + SUFFIX));
+            } catch (IOException e) {
+                // Found again and evicted at the next start
+            }
+        }
+    }
+
+    // Hex SHA-256 of the block's UTF-16 code units, fed to the digest through a reused buffer
+    static String key(CharSequence code) {
+        MessageDigest digest = SHA_256.get();
+        byte[] buffer = HASH_BUFFER.get();
+        int filled = 0;
+        for (int i = 0, length = code.length(); i < length; i++) {
+            char ch = code.charAt(i);
+            buffer[filled++] = (byte) (ch >>> 8);
+            buffer[filled++] = (byte) ch;
+            if (filled == buffer.length) {
+                digest.update(buffer, 0, filled);
+                filled = 0;
+            }
+        }
+        digest.update(buffer, 0, filled);
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
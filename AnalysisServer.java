@@ -0,0 +1,193 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Long-running analysis daemon, so callers skip JVM startup and JIT warm-up on every check.
+// Listens on a loopback TCP port or a Unix domain socket. The protocol follows the interactive mode:
+// a request is the source lines followed by a line "done", the response is the diagnostics in the
+// server's output format followed by an end-of-batch marker ("done" for text). Requests can be
+// pipelined: responses come back in request order and are flushed together while more requests
+// are already waiting. A line "quit" closes the connection. A request over MAX_REQUEST_SIZE bytes is
+// not analyzed, it is answered with a single error.
+public class AnalysisServer {
+
+    static final int DEFAULT_PORT = 7781;
+    static final int MAX_REQUEST_SIZE = 64 * 1024 * 1024;
+
+    private final String format;
+    private final AnalysisCache cache; // null to analyze every request
+    private final int maxRequestSize;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "analysis-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AnalysisServer(String format) {
+        this(format, null);
+    }
+
+    public AnalysisServer(String format, AnalysisCache cache) {
+        this(format, cache, MAX_REQUEST_SIZE);
+    }
+
+    AnalysisServer(String format, AnalysisCache cache, int maxRequestSize) {
+        this.format = format;
+        this.cache = cache;
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    // address is a port number, or "unix:" followed by the path of the socket file
+    public void serve(String address) throws IOException {
+        serve(bind(address));
+    }
+
+    static ServerSocketChannel bind(String address) throws IOException {
+        ServerSocketChannel server;
+        if (address.startsWith("unix:")) {
+            Path path = Path.of(address.substring("unix:".length()));
+            Files.deleteIfExists(path);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(path));
+        } else {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+        }
+        return server;
+    }
+
+    // Answers connections until the server channel is closed
+    void serve(ServerSocketChannel server) throws IOException {
+        try (ServerSocketChannel listener = server) {
+            System.err.println("Syntax Analyzer server listening on " + listener.getLocalAddress());
+            while (true) {
+                SocketChannel connection = listener.accept();
+                connections.execute(() -> handle(connection));
+            }
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    // One thread per connection; each request is analyzed from a clean state by the thread's analyzer.
+    // A request is collected as bytes and, when it is ASCII, analyzed where it lies in the buffer, so
+    // its lines are never copied into Strings.
+    private void handle(SocketChannel connection) {
+        try (SocketChannel channel = connection;
+             InputStream in = Channels.newInputStream(channel);
+             DiagnosticWriter out = DiagnosticWriter.create(format, Channels.newOutputStream(channel))) {
+            SyntaxAnalyzer analyzer = SyntaxAnalyzer.forCurrentThread();
+            byte[] buffer = new byte[8192];
+            ByteBuffer bytes = ByteBuffer.wrap(buffer);
+            int filled = 0;
+            int scanned = 0;
+            int lineStart = 0;
+            int requestStart = 0; // the request's lines so far end at lineStart
+            boolean tooLarge = false; // the request is being skipped up to its "done"
+            boolean lineCut = false; // the start of the current line was skipped, it is no command
+            boolean answered = false;
+
+            while (true) {
+                for (; scanned < filled; scanned++) {
+                    if (buffer[scanned] != '\n') {
+                        continue;
+                    }
+                    int lineEnd = scanned;
+                    boolean command = !lineCut;
+                    lineCut = false;
+                    if (command && isCommand(buffer, lineStart, lineEnd, "quit")) {
+                        return;
+                    }
+                    if (!command || !isCommand(buffer, lineStart, lineEnd, "done")) {
+                        lineStart = lineEnd + 1;
+                        continue;
+                    }
+
+                    CharSequence request = ByteSequence.of(bytes, requestStart, lineStart);
+                    if (tooLarge) {
+                        out.report(Diagnostic.Code.REQUEST_TOO_LARGE, 0, 0,
+                                "Request too large: more than " + maxRequestSize + " bytes");
+                        tooLarge = false;
+                    } else if (cache != null) {
+                        cache.analyze(request, out);
+                    } else {
+                        analyzer.analyze(request, out);
+                    }
+                    out.endBatch();
+                    answered = true;
+                    requestStart = lineStart = lineEnd + 1;
+                }
+
+                // Pipelined requests already read are answered before the output is flushed
+                if (answered) {
+                    out.flush();
+                    answered = false;
+                }
+
+                // Move the unfinished request to the front, growing the buffer only for big requests.
+                // Past maxRequestSize the request is dropped as it is read, only the current line is kept.
+                if (tooLarge) {
+                    requestStart = lineStart;
+                }
+                if (requestStart == 0 && filled == buffer.length) {
+                    if (buffer.length < maxRequestSize) {
+                        buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxRequestSize));
+                        bytes = ByteBuffer.wrap(buffer);
+                    } else if (lineStart > 0) {
+                        tooLarge = true;
+                        requestStart = lineStart;
+                    } else {
+                        // A single line filling the buffer
+                        tooLarge = true;
+                        lineCut = true;
+                        filled = scanned = 0;
+                    }
+                }
+                if (requestStart > 0) {
+                    System.arraycopy(buffer, requestStart, buffer, 0, filled - requestStart);
+                    filled -= requestStart;
+                    scanned -= requestStart;
+                    lineStart -= requestStart;
+                    requestStart = 0;
+                }
+                int read = in.read(buffer, filled, buffer.length - filled);
+                if (read == -1) {
+                    return;
+                }
+                filled += read;
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // The client went away, nothing to answer anymore
+        }
+    }
+
+    // Whether the line [start, end) is the command, ignoring case and surrounding white space
+    private static boolean isCommand(byte[] buffer, int start, int end, String command) {
+        while (start < end && (buffer[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        if (end - start != command.length()) {
+            return false;
+        }
+        for (int i = 0; i < command.length(); i++) {
+            if (Character.toLowerCase((char) buffer[start + i]) != command.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// State of a file analysis between two statements: the variables, the braces still open, the number the
+// next line is reported with and the byte offset where the next statement starts. An analysis resumed from a snapshot gives the
+// same results as going on from there, so a huge file can be analyzed in shards and a file that only
+// grows is re-checked from the last snapshot instead of from line one.
+// To notice a file that changed instead of growing, the snapshot keeps a checksum of the bytes in front
+// of the offset (at most TAIL_BYTES of them, so checking it stays cheap).
+// File format: "SAS" + version byte, line number (int), offset (long), checksum (long), variable count
+// (int), then per variable the name, type (byte), value (long) and, for Strings, a presence byte and
+// the value; strings are an int byte length followed by UTF-8 bytes. Last the open brace count (int) and
+// per brace its line number and column (int).
+public final class AnalysisSnapshot {
+
+    private static final int VERSION = 2;
+    private static final int TAIL_BYTES = 4096;
+
+    final SymbolTable variables;
+    final int[] braces; // line number and column of every open brace, outermost first
+    final int lineNumber;
+    final long offset;
+    private final long checksum;
+
+    AnalysisSnapshot(SymbolTable variables, int[] braces, int lineNumber, long offset, long checksum) {
+        this.variables = variables;
+        this.braces = braces;
+        this.lineNumber = lineNumber;
+        this.offset = offset;
+        this.checksum = checksum;
+    }
+
+    public int lineNumber() {
+        return lineNumber;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    // Whether the file still holds what was analyzed up to the offset, as far as the checksum tells
+    public boolean resumesInto(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return resumesInto(channel);
+        }
+    }
+
+    boolean resumesInto(FileChannel channel) throws IOException {
+        return offset <= channel.size() && checksum(channel, offset) == checksum;
+    }
+
+    // Checksum of the TAIL_BYTES bytes in front of offset
+    static long checksum(FileChannel channel, long offset) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate((int) Math.min(TAIL_BYTES, offset));
+        long position = offset - tail.capacity();
+        while (tail.hasRemaining()) {
+            int read = channel.read(tail, position + tail.position());
+            if (read == -1) {
+                throw new EOFException("File shorter than the snapshot offset " + offset);
+            }
+        }
+        tail.flip();
+        CRC32 crc = new CRC32();
+        crc.update(tail);
+        return crc.getValue();
+    }
+
+    public void write(Path file) throws IOException {
+        // Written next to the target and moved over it, a snapshot file is never left half written
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeBytes("SAS");
+            out.writeByte(VERSION);
+            out.writeInt(lineNumber);
+            out.writeLong(offset);
+            out.writeLong(checksum);
+            out.writeInt(variables.size());
+            for (int slot = variables.nextSlot(-1); slot != -1; slot = variables.nextSlot(slot)) {
+                writeString(out, variables.name(slot));
+                out.writeByte(variables.type(slot));
+                out.writeLong(variables.longValue(slot));
+                String string = variables.stringValue(slot);
+                out.writeBoolean(string != null);
+                if (string != null) {
+                    writeString(out, string);
+                }
+            }
+            out.writeInt(braces.length / 2);
+            for (int brace : braces) {
+                out.writeInt(brace);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static AnalysisSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            if (magic[0] != 'S' || magic[1] != 'A' || magic[2] != 'S' || magic[3] != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " analysis snapshot");
+            }
+            int lineNumber = in.readInt();
+            long offset = in.readLong();
+            long checksum = in.readLong();
+            int count = in.readInt();
+            SymbolTable variables = new SymbolTable();
+            for (int i = 0; i < count; i++) {
+                String name = readString(in);
+                byte type = in.readByte();
+                if (type < SymbolTable.BYTE || type > SymbolTable.STRING) {
+                    throw new IOException("Corrupt analysis snapshot");
+                }
+                long value = in.readLong();
+                String string = in.readBoolean() ? readString(in) : null;
+                variables.declare(name, type, value, string);
+            }
+            int braceCount = in.readInt();
+            if (braceCount < 0) {
+                throw new IOException("Corrupt analysis snapshot");
+            }
+            // Grown as they are read, a corrupt count ends with an EOFException instead of a huge array
+            int[] braces = new int[2 * Math.min(braceCount, 64)];
+            for (int i = 0; i < braceCount; i++) {
+                if (2 * i == braces.length) {
+                    braces = Arrays.copyOf(braces, 2 * braces.length);
+                }
+                braces[2 * i] = in.readInt();
+                braces[2 * i + 1] = in.readInt();
+            }
+            return new AnalysisSnapshot(variables, Arrays.copyOf(braces, 2 * braceCount), lineNumber, offset, checksum);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt analysis snapshot");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
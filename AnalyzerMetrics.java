@@ -0,0 +1,381 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Process-wide counters and latency histograms of the analyzer, to size it and to catch regressions.
+// Every analyzer records into its own Recorder with plain fields; the recorder is merged into the
+// shared metrics at the end of an analysis and every MERGE_INTERVAL statements in between. Recording
+// is off unless enabled (--metrics, -Dsyntaxanalyzer.metrics=true or the JMX attribute): an analyzer
+// then has no recorder and every stage costs one null check. Counters are exact, stage latencies are
+// sampled: one in SAMPLE_INTERVAL runs of a stage is timed, so enabled metrics stay cheap as well.
+class AnalyzerMetrics implements AnalyzerMetricsMXBean {
+
+    enum Stage {
+        LEX,        // tokens, comments, bracket structure and statement boundaries of a text
+        STRUCTURE,  // structure problems and the semicolon check of a statement
+        HANDLER,    // declaration, assignment, print or Scanner handling, expressions included
+        EXPRESSION  // evaluating an initializer, an assigned value or a print argument
+    }
+
+    enum CacheResult {
+        MEMORY_HIT, DISK_HIT, MISS
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Diagnostic.Code[] CODES = Diagnostic.Code.values();
+    // Bucket b counts latencies in [2^(b-1), 2^b) nanoseconds, the last one everything longer
+    private static final int BUCKETS = 40;
+    private static final int MERGE_INTERVAL = 4096;
+    private static final int SAMPLE_INTERVAL = 16;
+
+    static final AnalyzerMetrics GLOBAL = new AnalyzerMetrics();
+    static final String OBJECT_NAME = "SyntaxAnalyzer:type=Metrics";
+
+    private volatile boolean enabled = Boolean.getBoolean("syntaxanalyzer.metrics");
+
+    // Totals of all merged recorders, guarded by this
+    private long analyses;
+    private long lines;
+    private long statements;
+    private long busyNanos;
+    private long allocatedBytes;
+    private int symbolTableSize;
+    private int maxSymbolTableSize;
+    private final long[] diagnostics = new long[CODES.length];
+    private final long[] stageNanos = new long[STAGES.length];
+    private final long[][] histograms = new long[STAGES.length][BUCKETS];
+    private final long[] cacheLookups = new long[CacheResult.values().length];
+
+    // What one analyzer measured since its last merge; used by that analyzer's thread only
+    static final class Recorder {
+        // Looked up on the first recorder, so the management classes are not loaded while metrics are off
+        private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        private long lines;
+        private long statements;
+        private long started;
+        private long allocatedAtStart;
+        private final long[] diagnostics = new long[CODES.length];
+        private final long[] stageNanos = new long[STAGES.length];
+        private final long[][] histograms = new long[STAGES.length][BUCKETS];
+        private int sinceMerge;
+        private final int[] untilSample = new int[STAGES.length];
+
+        void begin() {
+            started = System.nanoTime();
+            allocatedAtStart = allocatedBytes();
+        }
+
+        // Whether the run of the stage about to start is timed
+        boolean sample(Stage stage) {
+            if (--untilSample[stage.ordinal()] > 0) {
+                return false;
+            }
+            untilSample[stage.ordinal()] = SAMPLE_INTERVAL;
+            return true;
+        }
+
+        void record(Stage stage, long nanos) {
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+            histograms[stage.ordinal()][bucket]++;
+            stageNanos[stage.ordinal()] += nanos;
+        }
+
+        void diagnostic(Diagnostic.Code code) {
+            diagnostics[code.ordinal()]++;
+        }
+
+        void lines(int count) {
+            lines += count;
+        }
+
+        // Counts an analyzed statement; long analyses are merged now and then so dumps stay current
+        void statement(int symbolTableSize) {
+            statements++;
+            if (++sinceMerge == MERGE_INTERVAL) {
+                GLOBAL.merge(this, symbolTableSize, false);
+            }
+        }
+
+        void finish(int symbolTableSize) {
+            GLOBAL.merge(this, symbolTableSize, true);
+        }
+
+        // Bytes allocated by the calling thread so far, 0 when the JVM does not track it
+        private static long allocatedBytes() {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                return Math.max(0, ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes());
+            }
+            return 0;
+        }
+    }
+
+    // Registers the metrics with the platform MBean server, once
+    static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered before
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    // Writes a dump in the given format (text or json) every interval seconds, on a daemon thread
+    static void dumpPeriodically(String format, long intervalSeconds, PrintStream out) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "analyzer-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> out.println(GLOBAL.dump(format)), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    String dump(String format) {
+        return format.equals("json") ? dumpJson() : dumpText();
+    }
+
+    // Counts a lookup of the result cache; a hit analyzes nothing, so it is not counted anywhere else
+    void cacheLookup(CacheResult result) {
+        if (enabled) {
+            synchronized (this) {
+                cacheLookups[result.ordinal()]++;
+            }
+        }
+    }
+
+    private synchronized void merge(Recorder recorder, int symbolTableSize, boolean finished) {
+        long now = System.nanoTime();
+        long allocated = Recorder.allocatedBytes();
+        if (finished) {
+            analyses++;
+        }
+        lines += recorder.lines;
+        statements += recorder.statements;
+        busyNanos += now - recorder.started;
+        allocatedBytes += allocated - recorder.allocatedAtStart;
+        this.symbolTableSize = symbolTableSize;
+        maxSymbolTableSize = Math.max(maxSymbolTableSize, symbolTableSize);
+        for (int code = 0; code < diagnostics.length; code++) {
+            diagnostics[code] += recorder.diagnostics[code];
+            recorder.diagnostics[code] = 0;
+        }
+        for (int stage = 0; stage < STAGES.length; stage++) {
+            stageNanos[stage] += recorder.stageNanos[stage];
+            recorder.stageNanos[stage] = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                histograms[stage][bucket] += recorder.histograms[stage][bucket];
+                recorder.histograms[stage][bucket] = 0;
+            }
+        }
+        recorder.lines = 0;
+        recorder.statements = 0;
+        recorder.sinceMerge = 0;
+        recorder.started = now;
+        recorder.allocatedAtStart = allocated;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Analyses already running keep recording or not recording until they end
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public synchronized long getAnalyses() {
+        return analyses;
+    }
+
+    @Override
+    public synchronized long getLines() {
+        return lines;
+    }
+
+    @Override
+    public synchronized long getStatements() {
+        return statements;
+    }
+
+    @Override
+    public synchronized double getLinesPerSecond() {
+        return busyNanos == 0 ? 0 : lines * 1e9 / busyNanos;
+    }
+
+    @Override
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public synchronized int getSymbolTableSize() {
+        return symbolTableSize;
+    }
+
+    @Override
+    public synchronized int getMaxSymbolTableSize() {
+        return maxSymbolTableSize;
+    }
+
+    @Override
+    public synchronized long getCacheHits() {
+        return cacheLookups[CacheResult.MEMORY_HIT.ordinal()] + cacheLookups[CacheResult.DISK_HIT.ordinal()];
+    }
+
+    @Override
+    public synchronized long getCacheDiskHits() {
+        return cacheLookups[CacheResult.DISK_HIT.ordinal()];
+    }
+
+    @Override
+    public synchronized long getCacheMisses() {
+        return cacheLookups[CacheResult.MISS.ordinal()];
+    }
+
+    // Codes reported at least once
+    @Override
+    public synchronized Map<String, Long> getDiagnosticCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int code = 0; code < diagnostics.length; code++) {
+            if (diagnostics[code] > 0) {
+                counts.put(CODES[code].name(), diagnostics[code]);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStageSamples() {
+        Map<String, Long> samples = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            samples.put(stage.name(), samples(stage));
+        }
+        return samples;
+    }
+
+    @Override
+    public synchronized Map<String, Double> getStageP50Micros() {
+        return percentiles(0.50);
+    }
+
+    @Override
+    public synchronized Map<String, Double> getStageP99Micros() {
+        return percentiles(0.99);
+    }
+
+    private Map<String, Double> percentiles(double fraction) {
+        Map<String, Double> micros = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            micros.put(stage.name(), percentileMicros(stage, fraction));
+        }
+        return micros;
+    }
+
+    private long samples(Stage stage) {
+        long samples = 0;
+        for (long bucket : histograms[stage.ordinal()]) {
+            samples += bucket;
+        }
+        return samples;
+    }
+
+    // Upper bound of the bucket holding the given fraction of the samples, 0 without samples
+    private double percentileMicros(Stage stage, double fraction) {
+        long[] histogram = histograms[stage.ordinal()];
+        long rank = (long) Math.ceil(samples(stage) * fraction);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histogram[bucket];
+            if (seen > 0 && seen >= rank) {
+                return (1L << bucket) / 1000.0;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public synchronized String dumpText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "Analyzer metrics: %d analyses, %d lines, %d statements, %.0f lines/s%n",
+                analyses, lines, statements, getLinesPerSecond()));
+        text.append(String.format(Locale.ROOT, "  allocated %.1f MB (%d bytes/line), symbol table %d variables (max %d)%n",
+                allocatedBytes / (1024.0 * 1024.0), lines == 0 ? 0 : allocatedBytes / lines, symbolTableSize, maxSymbolTableSize));
+        if (getCacheHits() + getCacheMisses() > 0) {
+            text.append(String.format(Locale.ROOT, "  result cache: %d hits (%d from disk), %d misses%n",
+                    getCacheHits(), getCacheDiskHits(), getCacheMisses()));
+        }
+        text.append(String.format(Locale.ROOT, "  %-12s %12s %12s %10s %10s%n", "stage", "samples", "sampled ms", "p50 us", "p99 us"));
+        for (Stage stage : STAGES) {
+            text.append(String.format(Locale.ROOT, "  %-12s %12d %12.1f %10.3f %10.3f%n", stage.name().toLowerCase(Locale.ROOT),
+                    samples(stage), stageNanos[stage.ordinal()] / 1e6, percentileMicros(stage, 0.50), percentileMicros(stage, 0.99)));
+        }
+        text.append("  diagnostics:");
+        getDiagnosticCounts().forEach((code, count) -> text.append(' ').append(code).append('=').append(count));
+        return text.toString();
+    }
+
+    @Override
+    public synchronized String dumpJson() {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"analyses\":").append(analyses)
+                .append(",\"lines\":").append(lines)
+                .append(",\"statements\":").append(statements)
+                .append(",\"linesPerSecond\":").append(String.format(Locale.ROOT, "%.1f", getLinesPerSecond()))
+                .append(",\"allocatedBytes\":").append(allocatedBytes)
+                .append(",\"symbolTableSize\":").append(symbolTableSize)
+                .append(",\"maxSymbolTableSize\":").append(maxSymbolTableSize)
+                .append(",\"cache\":{\"hits\":").append(getCacheHits())
+                .append(",\"diskHits\":").append(getCacheDiskHits())
+                .append(",\"misses\":").append(getCacheMisses()).append('}')
+                .append(",\"stages\":{");
+        for (Stage stage : STAGES) {
+            if (stage.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(stage.name()).append("\":{\"samples\":").append(samples(stage))
+                    .append(",\"sampledMicros\":").append(stageNanos[stage.ordinal()] / 1000)
+                    .append(",\"p50Micros\":").append(percentileMicros(stage, 0.50))
+                    .append(",\"p99Micros\":").append(percentileMicros(stage, 0.99)).append('}');
+        }
+        json.append("},\"diagnostics\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : getDiagnosticCounts().entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            json.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            first = false;
+        }
+        return json.append("}}").toString();
+    }
+
+    @Override
+    public synchronized void reset() {
+        analyses = 0;
+        lines = 0;
+        statements = 0;
+        busyNanos = 0;
+        allocatedBytes = 0;
+        symbolTableSize = 0;
+        maxSymbolTableSize = 0;
+        Arrays.fill(diagnostics, 0);
+        Arrays.fill(stageNanos, 0);
+        Arrays.fill(cacheLookups, 0);
+        for (long[] histogram : histograms) {
+            Arrays.fill(histogram, 0);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.Map;
+
+// Management interface of the analyzer metrics, registered as "SyntaxAnalyzer:type=Metrics".
+// Latencies are in microseconds, sampled, with percentiles estimated from power-of-two histogram buckets.
+public interface AnalyzerMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getAnalyses();
+
+    long getLines();
+
+    long getStatements();
+
+    // Lines per second of the time spent in analyze calls (reading input included), summed over all threads
+    double getLinesPerSecond();
+
+    long getAllocatedBytes();
+
+    int getSymbolTableSize();
+
+    int getMaxSymbolTableSize();
+
+    // Lookups of the result cache (--cache), hits include the ones found on disk
+    long getCacheHits();
+
+    long getCacheDiskHits();
+
+    long getCacheMisses();
+
+    Map<String, Long> getDiagnosticCounts();
+
+    Map<String, Long> getStageSamples();
+
+    Map<String, Double> getStageP50Micros();
+
+    Map<String, Double> getStageP99Micros();
+
+    String dumpText();
+
+    String dumpJson();
+
+    void reset();
+}
@@ -0,0 +1,83 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+// CharSequence view over a range of ASCII bytes, so the lexer can read a line straight out of a
+// (memory-mapped or read) ByteBuffer. Strings are only created when a token's text is asked for.
+class ByteSequence implements CharSequence {
+
+    private ByteBuffer bytes;
+    private byte[] array; // the bytes of a heap buffer, read directly; null for a mapped one
+    private int arrayOffset;
+    private int offset;
+    private int length;
+
+    ByteSequence() {
+    }
+
+    ByteSequence(ByteBuffer bytes, int offset, int length) {
+        set(bytes, offset, length);
+    }
+
+    ByteSequence set(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.array = bytes.hasArray() ? bytes.array() : null;
+        this.arrayOffset = array != null ? bytes.arrayOffset() + offset : 0;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    // Whether the bytes [start, end) are all ASCII, so they can be read as characters without decoding
+    static boolean isAscii(ByteBuffer bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The bytes [start, end) as characters: a view when they are ASCII, otherwise decoded as UTF-8
+    static CharSequence of(ByteBuffer bytes, int start, int end) {
+        if (isAscii(bytes, start, end)) {
+            return new ByteSequence(bytes, start, end - start);
+        }
+        byte[] decoded = new byte[end - start];
+        bytes.get(start, decoded);
+        return new String(decoded, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (array != null) {
+            return (char) (array[arrayOffset + Objects.checkIndex(index, length)] & 0xff);
+        }
+        return (char) (bytes.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteSequence(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return toString(0, length);
+    }
+
+    // Same as subSequence(start, end).toString(); heap bytes are copied once, straight into the String
+    String toString(int start, int end) {
+        if (array != null) {
+            return new String(array, arrayOffset + start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        byte[] copy = new byte[end - start];
+        bytes.get(offset + start, copy);
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,450 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+// Deterministic generator of large synthetic sources for capacity and soak tests: the same seed and
+// settings always give the same text. The lines mix everything the analyzer understands (declarations
+// of every type with arithmetic and String initializers, assignments, compound assignments and ++/--,
+// prints with concatenation and arithmetic, Scanner declarations, line, trailing and block comments,
+// statements continued over several lines) with errors of every Error kind at a controlled rate.
+// Variables are drawn from a fixed pool of names, so the symbol table stays the size of a real
+// program's however long the source is; valid statements only use variables of a fitting type, so
+// every error in the output is one that was asked for.
+// Usage: java CorpusGenerator [--lines=N] [--seed=S] [--variables=N] [--mix=balanced|declarations|prints|comments]
+//                            [--error-rate=R] [--error=KIND:R ...] [file]
+// writes the source to the file, or to standard output, and the injected error counts to standard error.
+public class CorpusGenerator {
+
+    // The errors the generator injects, with the diagnostic each one produces
+    enum Error {
+        MISSING_SEMICOLON(Diagnostic.Code.MISSING_SEMICOLON),
+        UNDECLARED_VARIABLE(Diagnostic.Code.UNDECLARED_VARIABLE),
+        TYPE_MISMATCH(Diagnostic.Code.TYPE_MISMATCH),
+        INVALID_VARIABLE_NAME(Diagnostic.Code.INVALID_VARIABLE_NAME),
+        UNCLOSED_PARENTHESIS(Diagnostic.Code.UNCLOSED_PARENTHESIS),
+        UNMATCHED_BRACKET(Diagnostic.Code.UNMATCHED_BRACKET),
+        UNTERMINATED_STRING(Diagnostic.Code.UNTERMINATED_LITERAL),
+        INVALID_PRINT(Diagnostic.Code.INVALID_PRINT),
+        DIVISION_BY_ZERO(Diagnostic.Code.INVALID_EXPRESSION),
+        INVALID_SCANNER(Diagnostic.Code.INVALID_SCANNER);
+
+        final Diagnostic.Code code;
+
+        Error(Diagnostic.Code code) {
+            this.code = code;
+        }
+    }
+
+    // How often each kind of statement comes up, in percent: declarations, assignments, prints, Scanner
+    // declarations, line comments, declarations with a trailing comment, block comments, statements
+    // continued on the next line and empty lines
+    enum Mix {
+        BALANCED(35, 15, 22, 2, 10, 6, 3, 4, 3),
+        DECLARATIONS(70, 5, 8, 1, 5, 5, 1, 4, 1),
+        PRINTS(10, 5, 70, 1, 5, 3, 1, 2, 3),
+        COMMENTS(10, 5, 8, 1, 40, 25, 8, 2, 1);
+
+        final int[] weights;
+
+        Mix(int... weights) {
+            this.weights = weights;
+        }
+    }
+
+    private static final Error[] ERRORS = Error.values();
+    // Declared types and how often a declaration picks them, in percent
+    private static final byte[] TYPES = {
+            SymbolTable.INT, SymbolTable.DOUBLE, SymbolTable.STRING, SymbolTable.BOOLEAN,
+            SymbolTable.CHAR, SymbolTable.LONG, SymbolTable.BYTE, SymbolTable.FLOAT
+    };
+    private static final int[] TYPE_WEIGHTS = {40, 15, 20, 10, 5, 5, 3, 2};
+    private static final String[] WORDS = {"total", "count", "value", "item", "result", "index", "sum", "name"};
+
+    private final Random random;
+    private int[] weights = Mix.BALANCED.weights;
+    private final double[] errorRates = new double[ERRORS.length];
+    private final long[] injected = new long[ERRORS.length];
+
+    // Declared variables of the pool by type: byType[t][0, typeCount[t]) are pool indexes, typeOf the
+    // type of every name (-1 while undeclared) and positionInType where it sits in its type's list
+    private final byte[] typeOf;
+    private final int[][] byType = new int[SymbolTable.STRING + 1][];
+    private final int[] typeCount = new int[SymbolTable.STRING + 1];
+    private final int[] positionInType;
+
+    private final StringBuilder line = new StringBuilder(128);
+    private long lines;
+
+    public CorpusGenerator(long seed, int variables) {
+        random = new Random(seed);
+        typeOf = new byte[variables];
+        Arrays.fill(typeOf, SymbolTable.UNKNOWN);
+        positionInType = new int[variables];
+        for (int type = 0; type < byType.length; type++) {
+            byType[type] = new int[variables];
+        }
+    }
+
+    public void setMix(Mix mix) {
+        weights = mix.weights;
+    }
+
+    // Sets the share of the lines that carry the given error
+    public void setErrorRate(Error error, double rate) {
+        errorRates[error.ordinal()] = rate;
+    }
+
+    // Spreads the rate evenly over all errors
+    public void setErrorRate(double rate) {
+        for (Error error : ERRORS) {
+            setErrorRate(error, rate / ERRORS.length);
+        }
+    }
+
+    // Errors injected so far of the given kind
+    public long injected(Error error) {
+        return injected[error.ordinal()];
+    }
+
+    // Appends about count lines (a block comment or a continued statement may end a little later)
+    public void generate(Appendable out, long count) throws IOException {
+        long end = lines + count;
+        while (lines < end) {
+            line.setLength(0);
+            Error error = pickError();
+            if (error != null) {
+                injected[error.ordinal()]++;
+                error(error);
+            } else {
+                statement();
+            }
+            out.append(line);
+        }
+    }
+
+    public String generate(long count) {
+        StringBuilder text = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 16, count * 32));
+        try {
+            generate(text, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringBuilder does not throw
+        }
+        return text.toString();
+    }
+
+    private Error pickError() {
+        double roll = random.nextDouble();
+        for (Error error : ERRORS) {
+            roll -= errorRates[error.ordinal()];
+            if (roll < 0) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    private void statement() {
+        int roll = random.nextInt(100);
+        int kind = 0;
+        while (roll >= weights[kind]) {
+            roll -= weights[kind++];
+        }
+        switch (kind) {
+            case 0:
+                declaration();
+                break;
+            case 1:
+                assignment();
+                break;
+            case 2:
+                print();
+                break;
+            case 3:
+                end(line.append("Scanner ").append(pick(WORDS)).append(" = new Scanner(System.in);"));
+                break;
+            case 4:
+                end(line.append("// ").append(pick(WORDS)).append(' ').append(random.nextInt(1000)));
+                break;
+            case 5:
+                declarationText();
+                end(line.append(" // ").append(pick(WORDS)));
+                break;
+            case 6:
+                end(line.append("/* ").append(pick(WORDS)).append(" ;"));
+                end(line.append("   ").append(pick(WORDS)).append(" */"));
+                break;
+            case 7: {
+                // An int declaration continued on the next line
+                int name = random.nextInt(typeOf.length);
+                line.append("int v").append(name).append(" = ");
+                intExpression(2);
+                end(line);
+                line.append("        + ").append(random.nextInt(100));
+                end(line.append(';'));
+                declare(name, SymbolTable.INT);
+                break;
+            }
+            default:
+                end(line);
+                break;
+        }
+    }
+
+    private void declaration() {
+        declarationText();
+        end(line);
+    }
+
+    private void declarationText() {
+        byte type = pickType();
+        int name = random.nextInt(typeOf.length);
+        line.append(SymbolTable.typeName(type)).append(" v").append(name).append(" = ");
+        value(type);
+        line.append(';');
+        declare(name, type);
+    }
+
+    private void assignment() {
+        byte type = pickType();
+        int name = declared(type);
+        if (name == -1) {
+            declaration();
+            return;
+        }
+        line.append('v').append(name);
+        int roll = random.nextInt(10);
+        if (roll < 2 && (type == SymbolTable.INT || type == SymbolTable.LONG || type == SymbolTable.DOUBLE)) {
+            line.append(random.nextBoolean() ? "++" : "--");
+        } else if (roll < 5 && (type == SymbolTable.INT || type == SymbolTable.LONG || type == SymbolTable.DOUBLE)) {
+            line.append(' ').append("+-*".charAt(random.nextInt(3))).append("= ");
+            intExpression(2);
+        } else if (roll < 5 && type == SymbolTable.STRING) {
+            line.append(" += ");
+            stringExpression();
+        } else {
+            line.append(" = ");
+            value(type);
+        }
+        end(line.append(';'));
+    }
+
+    private void print() {
+        line.append(random.nextInt(10) == 0 ? "System.err." : "System.out.").append(random.nextInt(4) == 0 ? "print(" : "println(");
+        switch (random.nextInt(3)) {
+            case 0:
+                stringExpression();
+                break;
+            case 1:
+                intExpression(3);
+                break;
+            default:
+                line.append('"').append(pick(WORDS)).append(": \" + (");
+                intExpression(2);
+                line.append(')');
+                break;
+        }
+        end(line.append(");"));
+    }
+
+    // A value that fits a variable of the type
+    private void value(byte type) {
+        switch (type) {
+            case SymbolTable.INT:
+                intExpression(3);
+                break;
+            case SymbolTable.LONG:
+                if (random.nextBoolean()) {
+                    line.append(3_000_000_000L + random.nextInt(1_000_000));
+                } else {
+                    intExpression(2);
+                }
+                break;
+            case SymbolTable.DOUBLE:
+            case SymbolTable.FLOAT: {
+                int operand = declared(SymbolTable.DOUBLE);
+                line.append(random.nextInt(1000)).append('.').append(random.nextInt(10));
+                if (operand != -1 && random.nextBoolean()) {
+                    line.append(" * v").append(operand);
+                }
+                break;
+            }
+            case SymbolTable.BOOLEAN: {
+                int operand = declared(SymbolTable.INT);
+                if (operand != -1 && random.nextBoolean()) {
+                    line.append('v').append(operand).append(random.nextBoolean() ? " < " : " >= ").append(random.nextInt(100));
+                } else {
+                    line.append(random.nextBoolean());
+                }
+                break;
+            }
+            case SymbolTable.CHAR:
+                line.append('\'').append((char) ('a' + random.nextInt(26))).append('\'');
+                break;
+            case SymbolTable.BYTE:
+                line.append(random.nextInt(128));
+                break;
+            default:
+                stringExpression();
+                break;
+        }
+    }
+
+    // Literals and int variables with + - *, a division or remainder by a non-zero literal, parentheses
+    private void intExpression(int operands) {
+        for (int i = 0; i < operands; i++) {
+            if (i > 0) {
+                line.append(' ').append("+-*".charAt(random.nextInt(3))).append(' ');
+            }
+            int operand = declared(SymbolTable.INT);
+            int roll = random.nextInt(4);
+            if (operand != -1 && roll == 0) {
+                line.append("(v").append(operand).append(" + ").append(random.nextInt(10)).append(')');
+            } else if (operand != -1 && roll == 1) {
+                line.append('v').append(operand).append(random.nextBoolean() ? " / " : " % ").append(1 + random.nextInt(9));
+            } else if (operand != -1 && roll == 2) {
+                line.append('v').append(operand);
+            } else {
+                line.append(random.nextInt(1000));
+            }
+        }
+    }
+
+    private void stringExpression() {
+        line.append('"').append(pick(WORDS)).append(' ').append(random.nextInt(1000)).append('"');
+        int operand = declared(TYPES[random.nextInt(TYPES.length)]);
+        if (operand != -1) {
+            line.append(" + v").append(operand);
+        }
+        if (random.nextBoolean()) {
+            line.append(" + \" \" + ").append(random.nextInt(100));
+        }
+    }
+
+    private void error(Error error) {
+        int name = random.nextInt(typeOf.length);
+        switch (error) {
+            case MISSING_SEMICOLON:
+                line.append("int v").append(name).append(" = ").append(random.nextInt(1000));
+                break;
+            case UNDECLARED_VARIABLE:
+                line.append("undeclared").append(random.nextInt(1000)).append(" = ").append(random.nextInt(1000)).append(';');
+                break;
+            case TYPE_MISMATCH:
+                line.append("int v").append(name).append(" = \"").append(pick(WORDS)).append("\";");
+                break;
+            case INVALID_VARIABLE_NAME:
+                line.append("int ").append(random.nextBoolean() ? "class" : "while").append(" = ").append(random.nextInt(10)).append(';');
+                break;
+            case UNCLOSED_PARENTHESIS:
+                line.append("System.out.println((").append(random.nextInt(10)).append(" + 1);");
+                break;
+            case UNMATCHED_BRACKET:
+                line.append("int v").append(name).append(" = ").append(random.nextInt(10)).append(");");
+                break;
+            case UNTERMINATED_STRING:
+                line.append("String v").append(name).append(" = \"").append(pick(WORDS)).append(';');
+                break;
+            case INVALID_PRINT:
+                line.append("System.out.printn(\"").append(pick(WORDS)).append("\");");
+                break;
+            case DIVISION_BY_ZERO:
+                line.append("int v").append(name).append(" = ").append(random.nextInt(100)).append(" / 0;");
+                break;
+            default:
+                line.append("Scanner ").append(pick(WORDS)).append(" = new Scanner(System.out);");
+                break;
+        }
+        end(line);
+    }
+
+    private void end(StringBuilder text) {
+        text.append('\n');
+        lines++;
+    }
+
+    private byte pickType() {
+        int roll = random.nextInt(100);
+        for (int i = 0; i < TYPES.length; i++) {
+            roll -= TYPE_WEIGHTS[i];
+            if (roll < 0) {
+                return TYPES[i];
+            }
+        }
+        return SymbolTable.INT;
+    }
+
+    private String pick(String[] words) {
+        return words[random.nextInt(words.length)];
+    }
+
+    // A declared variable of the type, or -1
+    private int declared(byte type) {
+        int count = typeCount[type];
+        return count == 0 ? -1 : byType[type][random.nextInt(count)];
+    }
+
+    private void declare(int name, byte type) {
+        byte previous = typeOf[name];
+        if (previous == type) {
+            return;
+        }
+        if (previous != SymbolTable.UNKNOWN) {
+            // Swap the last of the old type into its place
+            int position = positionInType[name];
+            int last = byType[previous][--typeCount[previous]];
+            byType[previous][position] = last;
+            positionInType[last] = position;
+        }
+        typeOf[name] = type;
+        positionInType[name] = typeCount[type];
+        byType[type][typeCount[type]++] = name;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long lines = 1_000_000;
+        long seed = 42;
+        int variables = 1000;
+        double errorRate = 0.05;
+        Mix mix = Mix.BALANCED;
+        Map<Error, Double> rates = new EnumMap<>(Error.class);
+        String file = null;
+
+        for (String arg : args) {
+            try {
+                if (arg.startsWith("--lines=")) {
+                    lines = Long.parseLong(arg.substring("--lines=".length()));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(arg.substring("--seed=".length()));
+                } else if (arg.startsWith("--variables=")) {
+                    variables = Math.max(1, Integer.parseInt(arg.substring("--variables=".length())));
+                } else if (arg.startsWith("--mix=")) {
+                    mix = Mix.valueOf(arg.substring("--mix=".length()).toUpperCase(Locale.ROOT));
+                } else if (arg.startsWith("--error-rate=")) {
+                    errorRate = Double.parseDouble(arg.substring("--error-rate=".length()));
+                } else if (arg.startsWith("--error=")) {
+                    String[] kindAndRate = arg.substring("--error=".length()).split(":", 2);
+                    rates.put(Error.valueOf(kindAndRate[0].toUpperCase(Locale.ROOT)), Double.parseDouble(kindAndRate[1]));
+                } else {
+                    file = arg;
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                System.err.println("Invalid argument: " + arg);
+                System.exit(2);
+            }
+        }
+
+        CorpusGenerator generator = new CorpusGenerator(seed, variables);
+        generator.setMix(mix);
+        generator.setErrorRate(errorRate);
+        rates.forEach(generator::setErrorRate);
+        try (Writer out = new BufferedWriter(file == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8), 1 << 16)) {
+            generator.generate(out, lines);
+        }
+        for (Error error : ERRORS) {
+            System.err.println(error.name().toLowerCase(Locale.ROOT) + ": " + generator.injected(error));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+// One message produced by the analyzer: what kind of result it is, where it was found and the text.
+// Line and column start at 1, a column of 0 means the message is about the whole line.
+public final class Diagnostic {
+
+    public enum Severity {
+        INFO, ERROR
+    }
+
+    public enum Code {
+        // Echoed comments and the notes explaining a mismatched value are printed without a line prefix
+        COMMENT(Severity.INFO, false),
+        INVALID_VALUE(Severity.INFO, false),
+
+        VALID_DECLARATION(Severity.INFO, true),
+        VALID_ASSIGNMENT(Severity.INFO, true),
+        VALID_USAGE(Severity.INFO, true),
+        VALID_PRINT(Severity.INFO, true),
+        VALID_SCANNER(Severity.INFO, true),
+
+        UNCLOSED_PARENTHESIS(Severity.ERROR, true),
+        MISSING_SEMICOLON(Severity.ERROR, true),
+        EXPECTED_SEMICOLON(Severity.ERROR, true),
+        UNEXPECTED_TOKEN(Severity.ERROR, true),
+        INVALID_START(Severity.ERROR, true),
+        UNDECLARED_VARIABLE(Severity.ERROR, true),
+        INVALID_VARIABLE_NAME(Severity.ERROR, true),
+        EXPECTED_VARIABLE_NAME(Severity.ERROR, true),
+        EXPECTED_ASSIGNMENT(Severity.ERROR, true),
+        TYPE_MISMATCH(Severity.ERROR, true),
+        INVALID_PRINT(Severity.ERROR, true),
+        INVALID_EXPRESSION(Severity.ERROR, true),
+        INVALID_SCANNER(Severity.ERROR, true),
+        UNCLOSED_BRACKET(Severity.ERROR, true),
+        UNMATCHED_BRACKET(Severity.ERROR, true),
+        UNTERMINATED_LITERAL(Severity.ERROR, true),
+        UNTERMINATED_COMMENT(Severity.ERROR, true),
+
+        // A server request over the size limit, answered without analyzing it
+        REQUEST_TOO_LARGE(Severity.ERROR, false);
+
+        public final Severity severity;
+        final boolean numbered;
+
+        Code(Severity severity, boolean numbered) {
+            this.severity = severity;
+            this.numbered = numbered;
+        }
+
+        private static final Code[] VALUES = values();
+
+        static Code of(int ordinal) {
+            return VALUES[ordinal];
+        }
+    }
+
+    public final Code code;
+    public final int line;
+    public final int column;
+    public final String message;
+
+    public Diagnostic(Code code, int line, int column, String message) {
+        this.code = code;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    public Severity severity() {
+        return code.severity;
+    }
+
+    // The text the analyzer has always printed, e.g. "Line 3: Invalid Syntax: Unclosed parenthesis."
+    static String text(Code code, int line, String message) {
+        return code.numbered ? "Line " + line + ": " + message : message;
+    }
+
+    @Override
+    public String toString() {
+        return text(code, line, message);
+    }
+}
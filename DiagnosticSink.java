@@ -0,0 +1,7 @@
+// Receives the diagnostics of an analysis as they are produced.
+// The fields are passed separately so sinks that only write them out never need a Diagnostic object.
+@FunctionalInterface
+public interface DiagnosticSink {
+
+    void report(Diagnostic.Code code, int line, int column, String message);
+}
@@ -0,0 +1,234 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Sinks writing diagnostics to a stream through a large buffer, so output is written in batches
+// instead of one flushed console write per message. Formats:
+//   text    the analyzer's usual "Line N: message" lines
+//   jsonl   one JSON object per line with code, severity, line, column and message
+//   binary  "SAD" + version byte, then records: tag byte (0 = diagnostic, 1 = source name, 2 = end of batch), for a diagnostic
+//           the code ordinal (byte), line and column (int) and the message; strings are an int byte length
+//           followed by UTF-8 bytes
+public abstract class DiagnosticWriter implements DiagnosticSink, Flushable, Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static DiagnosticWriter create(String format, OutputStream out) {
+        switch (format) {
+            case "text":
+                return new Text(out);
+            case "jsonl":
+                return new JsonLines(out);
+            case "binary":
+                return new Binary(out);
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + format + " (expected text, jsonl or binary)");
+        }
+    }
+
+    // Marks the start and the end of the diagnostics of one input, e.g. a file in batch mode
+    public abstract void startSource(String name);
+
+    public void endSource() {
+    }
+
+    // Marks the end of the diagnostics answering one request (server mode)
+    public abstract void endBatch();
+
+    static final class Text extends DiagnosticWriter {
+        private final Writer writer;
+
+        Text(OutputStream out) {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+
+        @Override
+        public void report(Diagnostic.Code code, int line, int column, String message) {
+            write(Diagnostic.text(code, line, message));
+            write(System.lineSeparator());
+        }
+
+        @Override
+        public void startSource(String name) {
+            write("==================== " + name + " ====================" + System.lineSeparator());
+        }
+
+        @Override
+        public void endSource() {
+            write(System.lineSeparator());
+        }
+
+        @Override
+        public void endBatch() {
+            write("done" + System.lineSeparator());
+        }
+
+        private void write(String text) {
+            try {
+                writer.write(text);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    static final class JsonLines extends DiagnosticWriter {
+        private final Writer writer;
+        private final StringBuilder line = new StringBuilder(256);
+        private String source;
+
+        JsonLines(OutputStream out) {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+
+        @Override
+        public void report(Diagnostic.Code code, int line, int column, String message) {
+            StringBuilder json = this.line;
+            json.setLength(0);
+            json.append('{');
+            if (source != null) {
+                json.append("\"file\":");
+                appendString(json, source);
+                json.append(',');
+            }
+            json.append("\"code\":\"").append(code.name())
+                    .append("\",\"severity\":\"").append(code.severity.name())
+                    .append("\",\"line\":").append(line)
+                    .append(",\"column\":").append(column)
+                    .append(",\"message\":");
+            appendString(json, message);
+            json.append("}\n");
+            try {
+                writer.append(json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void startSource(String name) {
+            source = name;
+        }
+
+        @Override
+        public void endSource() {
+            source = null;
+        }
+
+        @Override
+        public void endBatch() {
+            try {
+                writer.write("{\"done\":true}\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static void appendString(StringBuilder json, String value) {
+            json.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                switch (ch) {
+                    case '"': json.append("\\\""); break;
+                    case '\\': json.append("\\\\"); break;
+                    case '\n': json.append("\\n"); break;
+                    case '\r': json.append("\\r"); break;
+                    case '\t': json.append("\\t"); break;
+                    default:
+                        if (ch < ' ') {
+                            json.append(String.format("\\u%04x", (int) ch));
+                        } else {
+                            json.append(ch);
+                        }
+                }
+            }
+            json.append('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    static final class Binary extends DiagnosticWriter {
+        static final int VERSION = 1;
+        static final int DIAGNOSTIC = 0;
+        static final int SOURCE = 1;
+        static final int END_OF_BATCH = 2;
+
+        private final DataOutputStream out;
+
+        Binary(OutputStream stream) {
+            out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+            try {
+                out.writeBytes("SAD");
+                out.writeByte(VERSION);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void report(Diagnostic.Code code, int line, int column, String message) {
+            try {
+                out.writeByte(DIAGNOSTIC);
+                out.writeByte(code.ordinal());
+                out.writeInt(line);
+                out.writeInt(column);
+                writeString(message);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void startSource(String name) {
+            try {
+                out.writeByte(SOURCE);
+                writeString(name);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void endBatch() {
+            try {
+                out.writeByte(END_OF_BATCH);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Result of one analysis: every diagnostic the analyzer produced, in order.
+public class Diagnostics implements DiagnosticSink {
+
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private int errorCount;
+
+    @Override
+    public void report(Diagnostic.Code code, int line, int column, String message) {
+        diagnostics.add(new Diagnostic(code, line, column, message));
+        if (code.severity == Diagnostic.Severity.ERROR) {
+            errorCount++;
+        }
+    }
+
+    // Adds diagnostics made before, e.g. kept from an earlier analysis, without copying each one
+    void addAll(List<Diagnostic> list) {
+        diagnostics.addAll(list);
+        for (Diagnostic diagnostic : list) {
+            if (diagnostic.code.severity == Diagnostic.Severity.ERROR) {
+                errorCount++;
+            }
+        }
+    }
+
+    public List<Diagnostic> list() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    public int size() {
+        return diagnostics.size();
+    }
+
+    public int errorCount() {
+        return errorCount;
+    }
+
+    // Passes every diagnostic on to another sink, e.g. a writer
+    public void replay(DiagnosticSink sink) {
+        for (Diagnostic diagnostic : diagnostics) {
+            sink.report(diagnostic.code, diagnostic.line, diagnostic.column, diagnostic.message);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Diagnostic diagnostic : diagnostics) {
+            text.append(diagnostic).append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+}
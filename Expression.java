@@ -0,0 +1,608 @@
+// Typed expression evaluator shared by declaration initializers, assigned values and print arguments.
+// A precedence-climbing parser computes the value while it reads the tokens: a single pass over the
+// lexer's token arrays, no tree and no text rebuilt from the source. Numbers are read from their
+// characters and variables are looked up by their range of the source.
+// Values are typed the way Java types them: int, long, float, double, char, boolean, String and null,
+// with binary numeric promotion, integer division and overflow, and String concatenation. A value is
+// kept the way the symbol table keeps it: the type, the raw bits in a long (the double bits for
+// float/double) and the String for String values.
+// Errors are results instead of exceptions: evaluate returns false and errorCode, errorToken (-1 for
+// the end of the expression) and errorMessage describe the first one.
+final class Expression {
+
+    // Type of the null literal, beside the symbol table types
+    static final byte NULL = 9;
+
+    // Operators made of two tokens get codes above the character range
+    private static final int AND = 0x10000;
+    private static final int OR = 0x10001;
+    private static final int EQUAL = 0x10002;
+    private static final int NOT_EQUAL = 0x10003;
+    private static final int LESS_EQUAL = 0x10004;
+    private static final int GREATER_EQUAL = 0x10005;
+
+    // Value of the last evaluation
+    byte type;
+    long value;
+    String string;
+
+    // First error of the last evaluation
+    Diagnostic.Code errorCode;
+    int errorToken;
+    String errorMessage;
+
+    private Lexer lexer;
+    private SymbolTable variables;
+    private int position;
+    private int to;
+    private int operatorTokens; // tokens of the operator peekOperator returned
+    private int skipped; // > 0 inside the right operand of a && or || the left one decides: not run in Java
+
+    // Evaluates the longest expression starting at token from, reading no further than to; position()
+    // is then the first token after it. Returns false with the error set when there is no valid one.
+    boolean evaluate(Lexer lexer, int from, int to, SymbolTable variables) {
+        return evaluate(lexer, from, to, variables, false);
+    }
+
+    // Evaluates the tokens [from, to) as one expression
+    boolean evaluateAll(Lexer lexer, int from, int to, SymbolTable variables) {
+        return evaluate(lexer, from, to, variables, true);
+    }
+
+    private boolean evaluate(Lexer lexer, int from, int to, SymbolTable variables, boolean all) {
+        this.lexer = lexer;
+        this.variables = variables;
+        this.position = from;
+        this.to = to;
+        errorCode = null;
+        skipped = 0;
+        boolean valid = parseExpression(1) && (!all || position == to || unexpected());
+        this.lexer = null;
+        this.variables = null;
+        return valid;
+    }
+
+    int position() {
+        return position;
+    }
+
+    // The value as the analyzer prints it, the way Java prints it
+    String format() {
+        return format(type, value, string);
+    }
+
+    static String format(byte type, long value, String string) {
+        return type == NULL ? "null" : String.valueOf(SymbolTable.format(type, value, string));
+    }
+
+    static String typeName(byte type) {
+        return type == NULL ? "null" : SymbolTable.typeName(type);
+    }
+
+    // Converts the value to a variable of the target type, as an initializer or assigned value;
+    // false when it does not fit. Integral values are checked against the range of the target.
+    boolean assignTo(byte target) {
+        switch (target) {
+            case SymbolTable.BYTE:
+            case SymbolTable.SHORT:
+            case SymbolTable.INT:
+            case SymbolTable.LONG:
+                if ((!SymbolTable.isIntegral(type) && type != SymbolTable.CHAR) || value < minValue(target) || value > maxValue(target)) {
+                    return false;
+                }
+                break;
+            case SymbolTable.FLOAT:
+            case SymbolTable.DOUBLE:
+                if (!isNumeric(type)) {
+                    return false;
+                }
+                value = Double.doubleToRawLongBits(toFloatingPoint(target, asDouble()));
+                break;
+            case SymbolTable.CHAR:
+                if (type != SymbolTable.CHAR && (!SymbolTable.isIntegral(type) || value < Character.MIN_VALUE || value > Character.MAX_VALUE)) {
+                    return false;
+                }
+                break;
+            case SymbolTable.BOOLEAN:
+                if (type != SymbolTable.BOOLEAN) {
+                    return false;
+                }
+                break;
+            default:
+                if (type == NULL) {
+                    string = null;
+                } else if (type != SymbolTable.STRING) {
+                    return false;
+                }
+                break;
+        }
+        type = target;
+        return true;
+    }
+
+    // Converts the value like a cast to the target type: numbers and chars convert into each other,
+    // narrowing the way Java does; false for the conversions Java rejects
+    boolean castTo(byte target) {
+        if (target == SymbolTable.BOOLEAN || target == SymbolTable.STRING || !isNumeric(type)) {
+            return assignTo(target);
+        }
+        if (SymbolTable.isFloatingPoint(target)) {
+            value = Double.doubleToRawLongBits(toFloatingPoint(target, asDouble()));
+        } else {
+            long integral = value;
+            if (SymbolTable.isFloatingPoint(type)) {
+                // Narrower than long, a floating point value goes through int first
+                integral = target == SymbolTable.LONG ? (long) asDouble() : (int) asDouble();
+            }
+            value = narrow(target, integral);
+        }
+        type = target;
+        return true;
+    }
+
+    private static long narrow(byte target, long integral) {
+        switch (target) {
+            case SymbolTable.BYTE:
+                return (byte) integral;
+            case SymbolTable.SHORT:
+                return (short) integral;
+            case SymbolTable.INT:
+                return (int) integral;
+            case SymbolTable.CHAR:
+                return (char) integral;
+            default:
+                return integral;
+        }
+    }
+
+    private static double toFloatingPoint(byte target, double number) {
+        return target == SymbolTable.FLOAT ? (float) number : number;
+    }
+
+    private static long minValue(byte type) {
+        switch (type) {
+            case SymbolTable.BYTE: return Byte.MIN_VALUE;
+            case SymbolTable.SHORT: return Short.MIN_VALUE;
+            case SymbolTable.INT: return Integer.MIN_VALUE;
+            default: return Long.MIN_VALUE;
+        }
+    }
+
+    private static long maxValue(byte type) {
+        switch (type) {
+            case SymbolTable.BYTE: return Byte.MAX_VALUE;
+            case SymbolTable.SHORT: return Short.MAX_VALUE;
+            case SymbolTable.INT: return Integer.MAX_VALUE;
+            default: return Long.MAX_VALUE;
+        }
+    }
+
+    // Compound assignment (+=, -=, ...): applies the operator to the variable's value and the value,
+    // and casts the result back to the variable's type
+    boolean combine(int operator, int operatorToken, SymbolTable variables, int slot) {
+        byte target = variables.type(slot);
+        if (!apply(operator, operatorToken, target, variables.longValue(slot), variables.stringValue(slot), type, value, string)) {
+            return false;
+        }
+        byte result = type;
+        return castTo(target) || error(Diagnostic.Code.INVALID_EXPRESSION, operatorToken,
+                "Invalid expression: incompatible types: " + typeName(result) + " cannot be converted to " + SymbolTable.typeName(target));
+    }
+
+    // Sets the value to an int, e.g. the 1 that ++ adds
+    void setInt(int number) {
+        type = SymbolTable.INT;
+        value = number;
+        string = null;
+    }
+
+    static boolean isNumeric(byte type) {
+        return (type >= SymbolTable.BYTE && type <= SymbolTable.DOUBLE) || type == SymbolTable.CHAR;
+    }
+
+    private double asDouble() {
+        return asDouble(type, value);
+    }
+
+    private static double asDouble(byte type, long value) {
+        return SymbolTable.isFloatingPoint(type) ? Double.longBitsToDouble(value) : value;
+    }
+
+    // Binary numeric promotion: the type both operands of an arithmetic operator are converted to
+    private static byte promote(byte a, byte b) {
+        if (a == SymbolTable.DOUBLE || b == SymbolTable.DOUBLE) {
+            return SymbolTable.DOUBLE;
+        }
+        if (a == SymbolTable.FLOAT || b == SymbolTable.FLOAT) {
+            return SymbolTable.FLOAT;
+        }
+        if (a == SymbolTable.LONG || b == SymbolTable.LONG) {
+            return SymbolTable.LONG;
+        }
+        return SymbolTable.INT;
+    }
+
+    private static int precedence(int operator) {
+        switch (operator) {
+            case OR:
+                return 1;
+            case AND:
+                return 2;
+            case EQUAL:
+            case NOT_EQUAL:
+                return 3;
+            case '<':
+            case '>':
+            case LESS_EQUAL:
+            case GREATER_EQUAL:
+                return 4;
+            case '+':
+            case '-':
+                return 5;
+            case '*':
+            case '/':
+            case '%':
+                return 6;
+            default:
+                return -1;
+        }
+    }
+
+    private static String operatorText(int operator) {
+        switch (operator) {
+            case AND: return "&&";
+            case OR: return "||";
+            case EQUAL: return "==";
+            case NOT_EQUAL: return "!=";
+            case LESS_EQUAL: return "<=";
+            case GREATER_EQUAL: return ">=";
+            default: return String.valueOf((char) operator);
+        }
+    }
+
+    // The binary operator at position, or -1; operators such as && are two adjacent tokens
+    private int peekOperator() {
+        if (position >= to) {
+            return -1;
+        }
+        int kind = lexer.kind(position);
+        int next = position + 1 < to && lexer.end(position) == lexer.start(position + 1) ? lexer.kind(position + 1) : -1;
+        operatorTokens = 2;
+        switch (kind) {
+            case '&':
+                return next == '&' ? AND : -1;
+            case '|':
+                return next == '|' ? OR : -1;
+            case '=':
+                return next == '=' ? EQUAL : -1;
+            case '!':
+                return next == '=' ? NOT_EQUAL : -1;
+            case '<':
+            case '>':
+                if (next == '=') {
+                    return kind == '<' ? LESS_EQUAL : GREATER_EQUAL;
+                }
+                break;
+            case '+':
+            case '-':
+            case '*':
+            case '/':
+            case '%':
+                // x += 1 and x++ are assignments, not operators
+                if (next == '=' || (next == kind && kind != '*' && kind != '/' && kind != '%')) {
+                    return -1;
+                }
+                break;
+            default:
+                return -1;
+        }
+        operatorTokens = 1;
+        return kind;
+    }
+
+    private boolean parseExpression(int minPrecedence) {
+        if (!parseUnary()) {
+            return false;
+        }
+        while (true) {
+            int operator = peekOperator();
+            int precedence = precedence(operator);
+            if (precedence < minPrecedence) {
+                return true;
+            }
+            int operatorToken = position;
+            position += operatorTokens;
+            byte leftType = type;
+            long leftValue = value;
+            String leftString = string;
+            // The operand still has to compile, but Java never runs it, so it cannot fail at run time
+            boolean shortCircuit = leftType == SymbolTable.BOOLEAN
+                    && ((operator == AND && leftValue == 0) || (operator == OR && leftValue != 0));
+            if (shortCircuit) {
+                skipped++;
+            }
+            boolean valid = parseExpression(precedence + 1);
+            if (shortCircuit) {
+                skipped--;
+            }
+            if (!valid || !apply(operator, operatorToken, leftType, leftValue, leftString, type, value, string)) {
+                return false;
+            }
+        }
+    }
+
+    private boolean parseUnary() {
+        if (position >= to) {
+            return unexpected();
+        }
+        int kind = lexer.kind(position);
+        if (kind == '+' || kind == '-' || kind == '!') {
+            int operatorToken = position++;
+            if (!parseUnary()) {
+                return false;
+            }
+            if (kind == '!') {
+                if (type != SymbolTable.BOOLEAN) {
+                    return error(Diagnostic.Code.INVALID_EXPRESSION, operatorToken, "Invalid expression: bad operand type for unary '!': " + format());
+                }
+                value = value ^ 1;
+                return true;
+            }
+            if (!isNumeric(type)) {
+                return error(Diagnostic.Code.INVALID_EXPRESSION, operatorToken,
+                        "Invalid expression: bad operand type for unary '" + (char) kind + "': " + format());
+            }
+            byte promoted = promote(type, SymbolTable.INT);
+            if (kind == '+') {
+                type = promoted;
+            } else if (SymbolTable.isFloatingPoint(promoted)) {
+                value = Double.doubleToRawLongBits(-asDouble());
+            } else {
+                value = narrow(promoted, -value);
+            }
+            type = promoted;
+            return true;
+        }
+        if (kind == '(' && isCast()) {
+            byte target = lexer.keyword(position + 1).type;
+            int castToken = position;
+            position += 3;
+            if (!parseUnary()) {
+                return false;
+            }
+            byte source = type;
+            if (!castTo(target)) {
+                return error(Diagnostic.Code.INVALID_EXPRESSION, castToken,
+                        "Invalid expression: cannot cast " + typeName(source) + " to " + SymbolTable.typeName(target));
+            }
+            return true;
+        }
+        return parsePrimary();
+    }
+
+    // A primitive type in parentheses, e.g. (int) x
+    private boolean isCast() {
+        if (position + 2 >= to || lexer.kind(position + 1) != Lexer.TT_WORD || lexer.partner(position) != position + 2) {
+            return false;
+        }
+        Keyword keyword = lexer.keyword(position + 1);
+        return keyword.reserved && keyword.type != SymbolTable.UNKNOWN;
+    }
+
+    private boolean parsePrimary() {
+        int token = position;
+        switch (lexer.kind(token)) {
+            case Lexer.TT_NUMBER:
+                position++;
+                return number(token);
+            case '"':
+                position++;
+                type = SymbolTable.STRING;
+                string = lexer.text(token);
+                return true;
+            case '\'': {
+                position++;
+                int start = lexer.start(token);
+                if (lexer.end(token) - start == 3 && lexer.input().charAt(start + 1) != '\\') {
+                    value = lexer.input().charAt(start + 1);
+                } else {
+                    String text = lexer.text(token);
+                    if (text.length() != 1) {
+                        return error(Diagnostic.Code.INVALID_EXPRESSION, token, "Invalid char literal: Char literals can only be one character.");
+                    }
+                    value = text.charAt(0);
+                }
+                type = SymbolTable.CHAR;
+                string = null;
+                return true;
+            }
+            case Lexer.TT_WORD:
+                position++;
+                return word(token);
+            case '(': {
+                position++;
+                if (!parseExpression(1)) {
+                    return false;
+                }
+                if (position >= to || lexer.kind(position) != ')') {
+                    return unexpected();
+                }
+                position++;
+                return true;
+            }
+            default:
+                return unexpected();
+        }
+    }
+
+    // An integer literal is an int when it fits, otherwise a long
+    private boolean number(int token) {
+        CharSequence input = lexer.input();
+        long integral = 0;
+        for (int i = lexer.start(token); i < lexer.end(token); i++) {
+            char c = input.charAt(i);
+            if (c == '.') {
+                type = SymbolTable.DOUBLE;
+                value = Double.doubleToRawLongBits(lexer.number(token));
+                string = null;
+                return true;
+            }
+            if (integral > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return error(Diagnostic.Code.INVALID_EXPRESSION, token, "Invalid expression: integer number too large");
+            }
+            integral = integral * 10 + (c - '0');
+        }
+        type = integral <= Integer.MAX_VALUE ? SymbolTable.INT : SymbolTable.LONG;
+        value = integral;
+        string = null;
+        return true;
+    }
+
+    private boolean word(int token) {
+        switch (lexer.keyword(token)) {
+            case TRUE:
+            case FALSE:
+                type = SymbolTable.BOOLEAN;
+                value = lexer.keyword(token) == Keyword.TRUE ? 1 : 0;
+                string = null;
+                return true;
+            case NULL:
+                type = NULL;
+                string = null;
+                return true;
+            default:
+                break;
+        }
+        int slot = variables.find(lexer.input(), lexer.start(token), lexer.end(token));
+        if (slot == -1) {
+            return error(Diagnostic.Code.UNDECLARED_VARIABLE, token, "Invalid Syntax: variable or undeclared identifier: " + lexer.text(token));
+        }
+        type = variables.type(slot);
+        value = variables.longValue(slot);
+        string = type == SymbolTable.STRING ? variables.stringValue(slot) : null;
+        return true;
+    }
+
+    // Applies a binary operator to a and b and leaves the result as the value
+    private boolean apply(int operator, int operatorToken, byte aType, long a, String aString, byte bType, long b, String bString) {
+        // String concatenation, as soon as one side is a String
+        if (operator == '+' && (aType == SymbolTable.STRING || bType == SymbolTable.STRING)) {
+            string = format(aType, a, aString) + format(bType, b, bString);
+            type = SymbolTable.STRING;
+            return true;
+        }
+        // Every other operator has a primitive result
+        string = null;
+        switch (operator) {
+            case AND:
+            case OR:
+                if (aType != SymbolTable.BOOLEAN || bType != SymbolTable.BOOLEAN) {
+                    return badOperands(operator, operatorToken, aType, a, aString, bType, b, bString);
+                }
+                value = operator == AND ? a & b : a | b;
+                type = SymbolTable.BOOLEAN;
+                return true;
+            case EQUAL:
+            case NOT_EQUAL: {
+                boolean equal;
+                if (isNumeric(aType) && isNumeric(bType)) {
+                    equal = SymbolTable.isFloatingPoint(aType) || SymbolTable.isFloatingPoint(bType)
+                            ? asDouble(aType, a) == asDouble(bType, b) : a == b;
+                } else if (aType == SymbolTable.BOOLEAN && bType == SymbolTable.BOOLEAN) {
+                    equal = a == b;
+                } else if ((aType == SymbolTable.STRING || aType == NULL) && (bType == SymbolTable.STRING || bType == NULL)) {
+                    // Strings compare by their contents
+                    equal = aString == null ? bString == null : aString.equals(bString);
+                } else {
+                    return badOperands(operator, operatorToken, aType, a, aString, bType, b, bString);
+                }
+                value = equal == (operator == EQUAL) ? 1 : 0;
+                type = SymbolTable.BOOLEAN;
+                return true;
+            }
+            default:
+                break;
+        }
+        if (!isNumeric(aType) || !isNumeric(bType)) {
+            return badOperands(operator, operatorToken, aType, a, aString, bType, b, bString);
+        }
+
+        switch (operator) {
+            case '<':
+            case '>':
+            case LESS_EQUAL:
+            case GREATER_EQUAL: {
+                // Compared as doubles when one of them is floating point, so NaN compares false
+                boolean floating = SymbolTable.isFloatingPoint(aType) || SymbolTable.isFloatingPoint(bType);
+                double x = asDouble(aType, a);
+                double y = asDouble(bType, b);
+                boolean result;
+                switch (operator) {
+                    case '<': result = floating ? x < y : a < b; break;
+                    case '>': result = floating ? x > y : a > b; break;
+                    case LESS_EQUAL: result = floating ? x <= y : a <= b; break;
+                    default: result = floating ? x >= y : a >= b; break;
+                }
+                value = result ? 1 : 0;
+                type = SymbolTable.BOOLEAN;
+                return true;
+            }
+            default:
+                break;
+        }
+
+        byte promoted = promote(aType, bType);
+        if (SymbolTable.isFloatingPoint(promoted)) {
+            double x = asDouble(aType, a);
+            double y = asDouble(bType, b);
+            double result;
+            switch (operator) {
+                case '+': result = x + y; break;
+                case '-': result = x - y; break;
+                case '*': result = x * y; break;
+                case '/': result = x / y; break;
+                default: result = x % y; break;
+            }
+            value = Double.doubleToRawLongBits(toFloatingPoint(promoted, result));
+        } else {
+            long result;
+            switch (operator) {
+                case '+': result = a + b; break;
+                case '-': result = a - b; break;
+                case '*': result = a * b; break;
+                default:
+                    if (b == 0 && skipped == 0) {
+                        return error(Diagnostic.Code.INVALID_EXPRESSION, operatorToken, "Invalid expression: Division by zero");
+                    }
+                    result = b == 0 ? 0 : operator == '/' ? a / b : a % b;
+                    break;
+            }
+            value = narrow(promoted, result);
+        }
+        type = promoted;
+        return true;
+    }
+
+    private boolean badOperands(int operator, int operatorToken, byte aType, long a, String aString, byte bType, long b, String bString) {
+        String text = operatorText(operator);
+        return error(Diagnostic.Code.INVALID_EXPRESSION, operatorToken, "Invalid expression: bad operand types for '" + text + "': "
+                + format(aType, a, aString) + " " + text + " " + format(bType, b, bString));
+    }
+
+    private boolean unexpected() {
+        if (position >= to) {
+            return error(Diagnostic.Code.INVALID_EXPRESSION, -1, "Invalid expression: unexpected end of expression");
+        }
+        int kind = lexer.kind(position);
+        String token = kind == Lexer.TT_NUMBER || kind == Lexer.TT_WORD || kind == '"' || kind == '\''
+                ? lexer.source(position, position + 1) : String.valueOf((char) kind);
+        return error(Diagnostic.Code.INVALID_EXPRESSION, position, "Invalid expression: unexpected token: " + token);
+    }
+
+    private boolean error(Diagnostic.Code code, int token, String message) {
+        errorCode = code;
+        errorToken = token;
+        errorMessage = message;
+        return false;
+    }
+}
@@ -0,0 +1,400 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Incremental analysis of one document for editors and watch mode.
+// The document is analyzed in units: a line, or the few lines of a statement wrapped across lines.
+// Every unit's result is cached under its content and the state coming into it: the variables and the
+// number of braces still open.
+// An update only analyzes from the unit holding the first changed line on, and even there a unit is
+// looked up in the cache first: a unit seen before with the same incoming variables gives the same
+// diagnostics and the same effect on the variables, which is replayed instead of running the analysis
+// again. Instances are not thread-safe, each document gets its own.
+public class IncrementalAnalyzer {
+
+    // Lines between two saved copies of the variables, where re-analysis restarts from
+    private static final int CHECKPOINT_INTERVAL = 256;
+    private static final int DEFAULT_CACHE_SIZE = 65536;
+    // Lines a unit may span, the same limit the streaming analysis reads ahead
+    private static final int MAX_UNIT_LINES = 256;
+
+    // Outcome of analyzing one unit with given incoming variables
+    private static final class UnitResult {
+        final String text;
+        final long stateBefore;
+        final int bracesBefore;
+        final int lines;
+        final Diagnostic[] diagnostics; // line numbers count from 1 at the unit, re-stamped in the report
+        final int codeLines;
+
+        // The open braces the unit closed, and the line numbers (from 1 at the unit) and columns of the
+        // ones it opened and left open
+        final int bracesClosed;
+        final int[] braceLines;
+        final int[] braceColumns;
+
+        // The variables the unit declared or assigned, in order
+        final String[] names;
+        final byte[] types;
+        final long[] values;
+        final String[] strings;
+
+        UnitResult(String text, long stateBefore, int bracesBefore, int lines, Diagnostic[] diagnostics, int codeLines,
+                   SyntaxAnalyzer analyzer) {
+            this.text = text;
+            this.stateBefore = stateBefore;
+            this.bracesBefore = bracesBefore;
+            this.lines = lines;
+            this.diagnostics = diagnostics;
+            this.codeLines = codeLines;
+            bracesClosed = analyzer.bracesClosedByUnit();
+            int opened = analyzer.openBraces() - (bracesBefore - bracesClosed);
+            braceLines = new int[opened];
+            braceColumns = new int[opened];
+            for (int i = 0; i < opened; i++) {
+                braceLines[i] = analyzer.braceLine(bracesBefore - bracesClosed + i);
+                braceColumns[i] = analyzer.braceColumn(bracesBefore - bracesClosed + i);
+            }
+            SymbolTable variables = analyzer.variables();
+            int count = variables.writtenCount();
+            names = new String[count];
+            types = new byte[count];
+            values = new long[count];
+            strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                int slot = variables.written(i);
+                names[i] = variables.name(slot);
+                types[i] = variables.type(slot);
+                values[i] = variables.longValue(slot);
+                strings[i] = variables.stringValue(slot);
+            }
+        }
+
+        // Replays the unit's effect on the variables, returns the braces open after it
+        int apply(SymbolTable variables) {
+            for (int i = 0; i < names.length; i++) {
+                variables.declare(names[i], types[i], values[i], strings[i]);
+            }
+            return bracesAfter();
+        }
+
+        int bracesAfter() {
+            return bracesBefore - bracesClosed + braceLines.length;
+        }
+    }
+
+    private static final class Checkpoint {
+        final int line;
+        final SymbolTable variables;
+        final int braces;
+
+        Checkpoint(int line, SymbolTable variables, int braces) {
+            this.line = line;
+            this.variables = variables;
+            this.braces = braces;
+        }
+    }
+
+    private static final class Key {
+        final int textHash;
+        final long stateBefore;
+        final int bracesBefore;
+
+        Key(int textHash, long stateBefore, int bracesBefore) {
+            this.textHash = textHash;
+            this.stateBefore = stateBefore;
+            this.bracesBefore = bracesBefore;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).textHash == textHash && ((Key) other).stateBefore == stateBefore
+                    && ((Key) other).bracesBefore == bracesBefore;
+        }
+
+        @Override
+        public int hashCode() {
+            return (textHash * 31 + Long.hashCode(stateBefore)) * 31 + bracesBefore;
+        }
+    }
+
+    private final SyntaxAnalyzer analyzer = new SyntaxAnalyzer();
+    private final Map<Key, UnitResult> cache;
+
+    private String[] lines = new String[0];
+    private UnitResult[] results = new UnitResult[0]; // at the first line of every unit, null for the others
+    private final List<Checkpoint> checkpoints = new ArrayList<>(); // at unit starts, in line order
+
+    // The last report without the braces never closed, and at the first line of every unit (and at the
+    // end) where its diagnostics start in it and the line number it is reported from
+    private List<Diagnostic> reported = new ArrayList<>();
+    private int[] reportIndex = {0};
+    private int[] lineNumbers = {1};
+
+    private int analyzedLines; // lines actually analyzed by the last update, the rest came from the cache
+
+    public IncrementalAnalyzer() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public IncrementalAnalyzer(int cacheSize) {
+        cache = new LinkedHashMap<Key, UnitResult>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, UnitResult> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    // Replaces the whole document and returns the diagnostics of the new version
+    public Diagnostics update(CharSequence text) {
+        return update(text.toString().split("\n", -1));
+    }
+
+    // Replaces the lines [startLine, endLine) (0-based) by the given text
+    public Diagnostics edit(int startLine, int endLine, CharSequence replacement) {
+        if (startLine < 0 || endLine < startLine || endLine > lines.length) {
+            throw new IndexOutOfBoundsException("Lines " + startLine + ".." + endLine + " of " + lines.length);
+        }
+        String[] inserted = replacement.toString().split("\n", -1);
+        String[] updated = new String[lines.length - (endLine - startLine) + inserted.length];
+        System.arraycopy(lines, 0, updated, 0, startLine);
+        System.arraycopy(inserted, 0, updated, startLine, inserted.length);
+        System.arraycopy(lines, endLine, updated, startLine + inserted.length, lines.length - endLine);
+        return update(updated);
+    }
+
+    int analyzedLines() {
+        return analyzedLines;
+    }
+
+    private Diagnostics update(String[] newLines) {
+        int oldLength = lines.length;
+        int firstChanged = 0;
+        int common = Math.min(oldLength, newLines.length);
+        while (firstChanged < common && lines[firstChanged].equals(newLines[firstChanged])) {
+            firstChanged++;
+        }
+        // Lines at the end that did not change either, only moved by the lines inserted or removed
+        int commonEnd = 0;
+        while (commonEnd < common - firstChanged
+                && lines[oldLength - 1 - commonEnd].equals(newLines[newLines.length - 1 - commonEnd])) {
+            commonEnd++;
+        }
+        int shift = newLines.length - oldLength;
+        // Re-analysis starts with the unit the first changed line belongs to
+        while (firstChanged > 0 && (firstChanged >= results.length || results[firstChanged] == null)) {
+            firstChanged--;
+        }
+
+        UnitResult[] newResults = Arrays.copyOf(results, newLines.length);
+        Arrays.fill(newResults, Math.min(firstChanged, newLines.length), newLines.length, null);
+        analyzedLines = 0;
+        int resumed = -1; // the line from which the old units were taken over, if they were
+        analyzer.startSession((code, line, column, message) -> { });
+        try {
+            SymbolTable variables = analyzer.variables();
+            variables.recordWrites(true);
+
+            // Restore the variables as they were in front of the first changed unit
+            List<Checkpoint> dropped = new ArrayList<>();
+            while (!checkpoints.isEmpty() && checkpoints.get(checkpoints.size() - 1).line > firstChanged) {
+                dropped.add(checkpoints.remove(checkpoints.size() - 1));
+            }
+            int line = 0;
+            int braces = 0;
+            if (!checkpoints.isEmpty()) {
+                Checkpoint checkpoint = checkpoints.get(checkpoints.size() - 1);
+                variables.copyFrom(checkpoint.variables);
+                braces = checkpoint.braces;
+                for (line = checkpoint.line; line < firstChanged; line += results[line].lines) {
+                    braces = results[line].apply(variables);
+                }
+            }
+
+            while (line < newLines.length) {
+                // Early cutoff: an old unit starting here in the unchanged lines with the same incoming
+                // state gives the same results, and so does everything after it
+                int old = line - shift;
+                if (line >= newLines.length - commonEnd && results[old] != null
+                        && results[old].stateBefore == variables.fingerprint() && results[old].bracesBefore == braces) {
+                    System.arraycopy(results, old, newResults, line, oldLength - old);
+                    for (int i = dropped.size() - 1; i >= 0; i--) {
+                        Checkpoint checkpoint = dropped.get(i);
+                        if (checkpoint.line >= old) {
+                            checkpoints.add(new Checkpoint(checkpoint.line + shift, checkpoint.variables, checkpoint.braces));
+                        }
+                    }
+                    resumed = line;
+                    break;
+                }
+                if (checkpoints.isEmpty() || line >= checkpoints.get(checkpoints.size() - 1).line + CHECKPOINT_INTERVAL) {
+                    checkpoints.add(new Checkpoint(line, variables.copy(), braces));
+                }
+                UnitResult known = line >= newLines.length - commonEnd && results[old] != null
+                        && results[old].bracesBefore == braces ? results[old] : null;
+                UnitResult result = analyzeUnit(newLines, line, variables, braces, known);
+                newResults[line] = result;
+                line += result.lines;
+                braces = result.bracesAfter();
+            }
+        } finally {
+            analyzer.variables().recordWrites(false);
+            analyzer.finishSession();
+        }
+
+        Diagnostics diagnostics = report(newResults, firstChanged, resumed, shift);
+        lines = newLines;
+        results = newResults;
+        return diagnostics;
+    }
+
+    // The unit starting at the given line inside the given number of open braces: lines are added while
+    // its last statement may continue. A unit of the last version with the same lines and braces is known
+    // to span the same lines, its text is taken over without lexing.
+    private UnitResult analyzeUnit(String[] newLines, int line, SymbolTable variables, int braces, UnitResult known) {
+        String unit;
+        int end;
+        boolean lexed = known == null;
+        if (lexed) {
+            analyzer.setOpenBraces(braces);
+            StringBuilder text = new StringBuilder(newLines[line]);
+            end = line + 1;
+            while (!analyzer.lexUnit(text) && end < newLines.length && end - line < MAX_UNIT_LINES) {
+                text.append('\n').append(newLines[end++]);
+            }
+            unit = text.toString();
+        } else {
+            unit = known.text;
+            end = line + known.lines;
+        }
+
+        long stateBefore = variables.fingerprint();
+        Key key = new Key(unit.hashCode(), stateBefore, braces);
+        UnitResult result = cache.get(key);
+        if (result != null && result.text.equals(unit)) {
+            result.apply(variables);
+            return result;
+        }
+        if (!lexed) {
+            analyzer.setOpenBraces(braces);
+            analyzer.lexUnit(unit);
+        }
+
+        // The lexer holds the unit, only the analysis is left to do
+        Diagnostics diagnostics = new Diagnostics();
+        analyzer.redirect(diagnostics);
+        variables.resetWritten();
+        int codeLines = analyzer.analyzeUnit(1) - 1;
+        result = new UnitResult(unit, stateBefore, braces, end - line, diagnostics.list().toArray(new Diagnostic[0]), codeLines, analyzer);
+        cache.put(key, result);
+        analyzedLines += end - line;
+        return result;
+    }
+
+    // Diagnostics of the whole document with the line numbers of the current version, the braces never
+    // closed last. The diagnostics of the units in front of the first changed one are kept from the last
+    // report, and so are the ones of the old units taken over at the end, moved to their new line numbers.
+    private Diagnostics report(UnitResult[] newResults, int firstChanged, int resumed, int shift) {
+        int length = newResults.length;
+        List<Diagnostic> list = new ArrayList<>(reported.size() + 16);
+        list.addAll(reported.subList(0, reportIndex[firstChanged]));
+        int[] newIndex = Arrays.copyOf(reportIndex, length + 1);
+        int[] newLineNumbers = Arrays.copyOf(lineNumbers, length + 1);
+
+        int lineNumber = lineNumbers[firstChanged];
+        int line = firstChanged;
+        for (; line < (resumed == -1 ? length : resumed); line += newResults[line].lines) {
+            UnitResult result = newResults[line];
+            newIndex[line] = list.size();
+            newLineNumbers[line] = lineNumber;
+            for (Diagnostic diagnostic : result.diagnostics) {
+                list.add(new Diagnostic(diagnostic.code, lineNumber + diagnostic.line - 1, diagnostic.column, diagnostic.message));
+            }
+            lineNumber += result.codeLines;
+        }
+        if (resumed != -1) {
+            int old = resumed - shift;
+            int lineShift = lineNumber - lineNumbers[old];
+            int indexShift = list.size() - reportIndex[old];
+            List<Diagnostic> tail = reported.subList(reportIndex[old], reportIndex[results.length]);
+            if (lineShift == 0) {
+                list.addAll(tail);
+            } else {
+                for (Diagnostic diagnostic : tail) {
+                    list.add(new Diagnostic(diagnostic.code, diagnostic.line + lineShift, diagnostic.column, diagnostic.message));
+                }
+            }
+            for (line = resumed; line < length; line++) {
+                newIndex[line] = reportIndex[line - shift] + indexShift;
+                newLineNumbers[line] = lineNumbers[line - shift] + lineShift;
+            }
+            lineNumber = lineNumbers[results.length] + lineShift;
+        }
+        newIndex[length] = list.size();
+        newLineNumbers[length] = lineNumber;
+
+        int[] braceLines = new int[16];
+        int[] braceColumns = new int[16];
+        int braces = 0;
+        for (line = 0; line < length; line += newResults[line].lines) {
+            UnitResult result = newResults[line];
+            braces -= result.bracesClosed;
+            if (braceLines.length < braces + result.braceLines.length) {
+                braceLines = Arrays.copyOf(braceLines, 2 * (braces + result.braceLines.length));
+                braceColumns = Arrays.copyOf(braceColumns, braceLines.length);
+            }
+            for (int i = 0; i < result.braceLines.length; i++) {
+                braceLines[braces] = newLineNumbers[line] + result.braceLines[i] - 1;
+                braceColumns[braces++] = result.braceColumns[i];
+            }
+        }
+        reported = list;
+        reportIndex = newIndex;
+        lineNumbers = newLineNumbers;
+
+        Diagnostics diagnostics = new Diagnostics();
+        diagnostics.addAll(list);
+        for (int i = 0; i < braces; i++) {
+            diagnostics.report(Diagnostic.Code.UNCLOSED_BRACKET, braceLines[i], braceColumns[i], "Invalid Syntax: Unclosed '{'.");
+        }
+        return diagnostics;
+    }
+
+    // Watch mode: re-analyzes the file every time it changes on disk, until the thread is interrupted
+    public static void watch(Path file, DiagnosticWriter writer) throws IOException, InterruptedException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path name = file.getFileName();
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            analyzeFile(analyzer, file, writer);
+
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= name.equals(event.context());
+                }
+                key.reset();
+                if (changed && Files.isRegularFile(file)) {
+                    analyzeFile(analyzer, file, writer);
+                }
+            }
+        }
+    }
+
+    private static void analyzeFile(IncrementalAnalyzer analyzer, Path file, DiagnosticWriter writer) throws IOException {
+        long start = System.nanoTime();
+        Diagnostics diagnostics = analyzer.update(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        long micros = (System.nanoTime() - start) / 1000;
+        System.err.println("Analyzed " + file + ": " + analyzer.analyzedLines() + " of " + analyzer.lines.length
+                + " lines re-analyzed in " + micros + " us");
+        writer.startSource(file.toString());
+        diagnostics.replay(writer);
+        writer.endSource();
+        writer.flush();
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+// Words the analyzer gives a meaning to: the Java reserved words, the literals true/false/null and
+// the names used by the statements it understands (String, System.out.println, Scanner).
+// The lexer classifies every word token while scanning it: the word's String.hashCode, computed as
+// the characters go by, picks the single candidate in a perfect hash table, and a character compare
+// confirms it. No String is created for a word to find out what it is.
+enum Keyword {
+    NONE(null, false, SymbolTable.UNKNOWN), // an ordinary identifier, or not a word at all
+
+    ABSTRACT, ASSERT, BREAK, CASE, CATCH, CLASS, CONST, CONTINUE, DEFAULT, DO, ELSE, ENUM, EXTENDS,
+    FINAL, FINALLY, FOR, GOTO, IF, IMPLEMENTS, IMPORT, INSTANCEOF, INTERFACE, NATIVE, NEW, PACKAGE,
+    PRIVATE, PROTECTED, PUBLIC, RETURN, STATIC, STRICTFP, SUPER, SWITCH, SYNCHRONIZED, THIS, THROW,
+    THROWS, TRANSIENT, TRY, VOID, VOLATILE, WHILE,
+
+    BYTE(SymbolTable.BYTE), SHORT(SymbolTable.SHORT), INT(SymbolTable.INT), LONG(SymbolTable.LONG),
+    FLOAT(SymbolTable.FLOAT), DOUBLE(SymbolTable.DOUBLE), BOOLEAN(SymbolTable.BOOLEAN), CHAR(SymbolTable.CHAR),
+
+    // Variables may be named like these, except null
+    STRING("String", false, SymbolTable.STRING),
+    TRUE("true", false, SymbolTable.UNKNOWN),
+    FALSE("false", false, SymbolTable.UNKNOWN),
+    NULL("null", true, SymbolTable.UNKNOWN),
+    SYSTEM("System", false, SymbolTable.UNKNOWN),
+    SCANNER("Scanner", false, SymbolTable.UNKNOWN),
+    OUT("out", false, SymbolTable.UNKNOWN),
+    ERR("err", false, SymbolTable.UNKNOWN),
+    PRINT("print", false, SymbolTable.UNKNOWN),
+    PRINTLN("println", false, SymbolTable.UNKNOWN),
+    PRINTF("printf", false, SymbolTable.UNKNOWN);
+
+    final String text;
+    final boolean reserved; // not allowed as a variable name
+    final byte type; // the type a declaration starting with the word declares, UNKNOWN for the others
+
+    Keyword() {
+        this(SymbolTable.UNKNOWN);
+    }
+
+    Keyword(byte type) {
+        this.text = name().toLowerCase(Locale.ROOT);
+        this.reserved = true;
+        this.type = type;
+    }
+
+    Keyword(String text, boolean reserved, byte type) {
+        this.text = text;
+        this.reserved = reserved;
+        this.type = type;
+    }
+
+    // Slot of a word is (hash * multiplier) >>> SHIFT; the multiplier is searched once, when the class
+    // loads, so that no two keywords share a slot
+    private static final int SHIFT = 32 - 9;
+    private static final Keyword[] TABLE = new Keyword[1 << (32 - SHIFT)];
+    private static final int MULTIPLIER = findMultiplier();
+
+    private static int findMultiplier() {
+        Keyword[] values = values();
+        for (int multiplier = 0x9E3779B1; ; multiplier += 2) {
+            Arrays.fill(TABLE, null);
+            boolean perfect = true;
+            for (int i = 1; i < values.length && perfect; i++) {
+                int slot = (values[i].text.hashCode() * multiplier) >>> SHIFT;
+                perfect = TABLE[slot] == null;
+                TABLE[slot] = values[i];
+            }
+            if (perfect) {
+                return multiplier;
+            }
+        }
+    }
+
+    // The keyword text[start, end) is, given its String.hashCode
+    static Keyword lookup(int hash, CharSequence text, int start, int end) {
+        Keyword candidate = TABLE[(hash * MULTIPLIER) >>> SHIFT];
+        if (candidate == null || candidate.text.length() != end - start) {
+            return NONE;
+        }
+        for (int i = 0; i < end - start; i++) {
+            if (candidate.text.charAt(i) != text.charAt(start + i)) {
+                return NONE;
+            }
+        }
+        return candidate;
+    }
+
+    static Keyword of(String word) {
+        return lookup(word.hashCode(), word, 0, word.length());
+    }
+}
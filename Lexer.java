@@ -0,0 +1,665 @@
+import java.util.Arrays;
+
+// Hand-written lexer that tokenizes a whole code block in a single pass.
+// Tokens are kept as parallel int arrays (kind, start offset, end offset) so lexing a block
+// allocates nothing per token; text is only turned into a String when a handler asks for it.
+// Token kinds follow StreamTokenizer: negative constants for words and numbers, the quote character
+// for string/char literals and the character itself for everything else. Line and block comments
+// are kept apart from the tokens, so a statement reads the same with or without comments inside.
+// Lexing also validates the bracket structure in the same pass: (), [] and {} are matched with a stack
+// across lines, every bracket knows its partner, and unmatched brackets and unterminated literals
+// are flagged so the analyzer can report them with their exact position. A '{' may be closed far
+// later, in text lexed after this one: it is not flagged when still open at the end, and the text can be
+// lexed inside braces opened in text before it, which its '}' close. Every word is classified as a
+// Keyword while it is scanned.
+class Lexer {
+
+    static final int TT_EOF = -1;
+    static final int TT_NUMBER = -2;
+    static final int TT_WORD = -3;
+
+    private static final Keyword[] KEYWORDS = Keyword.values();
+
+    private CharSequence source;
+
+    private int[] kinds = new int[256];
+    private int[] starts = new int[256];
+    private int[] ends = new int[256];
+    private int[] partners = new int[256]; // matching bracket of a bracket token, -1 when unmatched
+    private boolean[] broken = new boolean[256]; // unmatched bracket or unterminated literal
+    private byte[] keywords = new byte[256]; // Keyword ordinal of a word token, NONE for the rest
+    private int tokenCount;
+    private int problemCount;
+
+    private int[] commentStarts = new int[16];
+    private int[] commentEnds = new int[16];
+    private int commentCount;
+    private int unterminatedComment; // block comment running to the end of the text, or -1
+
+    // Brackets still open while lexing, innermost last
+    private int[] open = new int[16];
+    private int openCount;
+
+    // Braces opened in text before this one and still open at the end of the text, and the '}' tokens
+    // that closed the others, the innermost first
+    private int outerBraces;
+    private int[] outerCloses = new int[16];
+    private int outerCloseCount;
+
+    // lineTokens[i] is the index of the first token of line i, lineTokens[lineCount] == tokenCount,
+    // lineComments[i] the same for comments (a block comment belongs to the line it starts on),
+    // lineOffsets[i] the offset of the first character of line i
+    private int[] lineTokens = new int[64];
+    private int[] lineComments = new int[64];
+    private int[] lineOffsets = new int[64];
+    private int lineCount;
+
+    // statementEnds[i] is the end (exclusive) of statement i, statement i + 1 starts there;
+    // found on first use, the parallel analysis does it together with lexing
+    private int[] statementEnds = new int[64];
+    private int statementCount = -1;
+
+    // Cursor used by the handlers, limited to the tokens of the current statement
+    private int position;
+    private int limit;
+    private int current;
+
+    void lex(CharSequence source) {
+        lex(source, 0);
+    }
+
+    // Lexes the text inside outerBraces braces opened before it
+    void lex(CharSequence source, int outerBraces) {
+        this.source = source;
+        this.outerBraces = outerBraces;
+        outerCloseCount = 0;
+        tokenCount = 0;
+        problemCount = 0;
+        commentCount = 0;
+        unterminatedComment = -1;
+        statementCount = -1;
+        openCount = 0;
+        lineCount = 0;
+        position = 0;
+        limit = 0;
+        current = -1;
+
+        int length = source.length();
+        int i = 0;
+        startLine(0);
+        while (i < length) {
+            char ch = source.charAt(i);
+
+            if (ch == '\n') {
+                i++;
+                startLine(i);
+            } else if (ch <= ' ') {
+                i++;
+            } else if (ch == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                // A line comment runs to the end of the line, trailing whitespace excluded
+                int end = i + 2;
+                int lastVisible = end;
+                while (end < length && source.charAt(end) != '\n') {
+                    if (source.charAt(end) > ' ') {
+                        lastVisible = end + 1;
+                    }
+                    end++;
+                }
+                addComment(i, lastVisible);
+                i = end;
+            } else if (ch == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                // A block comment may span lines, the lines it covers are still counted
+                int end = i + 2;
+                while (end + 1 < length && (source.charAt(end) != '*' || source.charAt(end + 1) != '/')) {
+                    end++;
+                }
+                if (end + 1 < length) {
+                    end += 2;
+                } else {
+                    // Unterminated, it takes the rest of the text except trailing whitespace
+                    end = length;
+                    while (source.charAt(end - 1) <= ' ') {
+                        end--;
+                    }
+                    unterminatedComment = commentCount;
+                }
+                addComment(i, end);
+                for (int k = i; k < end; k++) {
+                    if (source.charAt(k) == '\n') {
+                        startLine(k + 1);
+                    }
+                }
+                i = end;
+            } else if (isWordStart(ch)) {
+                // The hash is String.hashCode of the word, for the keyword lookup
+                int hash = ch;
+                int end = i + 1;
+                char c;
+                while (end < length && isWordPart(c = source.charAt(end))) {
+                    hash = 31 * hash + c;
+                    end++;
+                }
+                addToken(TT_WORD, i, end);
+                keywords[tokenCount - 1] = (byte) Keyword.lookup(hash, source, i, end).ordinal();
+                i = end;
+            } else if (ch >= '0' && ch <= '9') {
+                int end = i + 1;
+                boolean seenDot = false;
+                while (end < length) {
+                    char c = source.charAt(end);
+                    if (c == '.' && !seenDot) {
+                        seenDot = true;
+                    } else if (c < '0' || c > '9') {
+                        break;
+                    }
+                    end++;
+                }
+                addToken(TT_NUMBER, i, end);
+                i = end;
+            } else if (ch == '"' || ch == '\'') {
+                // Literals end at the matching quote or, when unterminated, at the end of the line
+                int end = i + 1;
+                while (end < length) {
+                    char c = source.charAt(end);
+                    if (c == ch || c == '\n') {
+                        break;
+                    }
+                    if (c == '\\' && end + 1 < length && source.charAt(end + 1) != '\n') {
+                        end++;
+                    }
+                    end++;
+                }
+                boolean terminated = end < length && source.charAt(end) == ch;
+                if (terminated) {
+                    end++;
+                }
+                addToken(ch, i, end);
+                if (!terminated) {
+                    problem(tokenCount - 1);
+                }
+                i = end;
+            } else {
+                addToken(ch, i, i + 1);
+                if (ch == '(' || ch == '[' || ch == '{') {
+                    openBracket(tokenCount - 1);
+                } else if (ch == ')' || ch == ']' || ch == '}') {
+                    closeBracket(tokenCount - 1);
+                } else if (ch == ';') {
+                    // A statement never continues inside ( or [, whatever is still open there stays unclosed
+                    while (openCount > 0 && kinds[open[openCount - 1]] != '{') {
+                        problem(open[--openCount]);
+                    }
+                }
+                i++;
+            }
+        }
+        lineTokens[lineCount] = tokenCount;
+        lineComments[lineCount] = commentCount;
+        for (int k = 0; k < openCount; k++) {
+            if (kinds[open[k]] != '{') {
+                problem(open[k]);
+            }
+        }
+    }
+
+    private void openBracket(int token) {
+        if (openCount == open.length) {
+            open = Arrays.copyOf(open, openCount * 2);
+        }
+        open[openCount++] = token;
+    }
+
+    private void closeBracket(int token) {
+        int opening = kinds[token] == ')' ? '(' : kinds[token] == ']' ? '[' : '{';
+        int match = openCount - 1;
+        while (match >= 0 && kinds[open[match]] != opening) {
+            match--;
+        }
+        if (match == -1 && opening == '{' && outerBraces > 0) {
+            // Closes a brace of the text before, whatever this text still has open stays unclosed
+            for (int k = 0; k < openCount; k++) {
+                problem(open[k]);
+            }
+            openCount = 0;
+            outerBraces--;
+            if (outerCloseCount == outerCloses.length) {
+                outerCloses = Arrays.copyOf(outerCloses, outerCloseCount * 2);
+            }
+            outerCloses[outerCloseCount++] = token;
+            return;
+        }
+        if (match == -1) {
+            // Nothing to close, the open brackets are left for a later closing bracket
+            problem(token);
+            return;
+        }
+        // Brackets opened inside the matched pair and never closed, e.g. the '[' in "( [ )"
+        for (int k = openCount - 1; k > match; k--) {
+            problem(open[k]);
+        }
+        partners[open[match]] = token;
+        partners[token] = open[match];
+        openCount = match;
+    }
+
+    private void problem(int token) {
+        broken[token] = true;
+        problemCount++;
+    }
+
+    static boolean isWordStart(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_' || ch == '$'
+                || (ch >= 128 && Character.isLetter(ch));
+    }
+
+    static boolean isWordPart(char ch) {
+        return isWordStart(ch) || (ch >= '0' && ch <= '9');
+    }
+
+    private void startLine(int offset) {
+        if (lineCount + 1 >= lineTokens.length) {
+            lineTokens = Arrays.copyOf(lineTokens, lineTokens.length * 2);
+            lineOffsets = Arrays.copyOf(lineOffsets, lineOffsets.length * 2);
+            lineComments = Arrays.copyOf(lineComments, lineComments.length * 2);
+        }
+        lineOffsets[lineCount] = offset;
+        lineComments[lineCount] = commentCount;
+        lineTokens[lineCount++] = tokenCount;
+    }
+
+    private void addToken(int kind, int start, int end) {
+        if (tokenCount == kinds.length) {
+            kinds = Arrays.copyOf(kinds, tokenCount * 2);
+            starts = Arrays.copyOf(starts, tokenCount * 2);
+            ends = Arrays.copyOf(ends, tokenCount * 2);
+            partners = Arrays.copyOf(partners, tokenCount * 2);
+            broken = Arrays.copyOf(broken, tokenCount * 2);
+            keywords = Arrays.copyOf(keywords, tokenCount * 2);
+        }
+        kinds[tokenCount] = kind;
+        starts[tokenCount] = start;
+        ends[tokenCount] = end;
+        partners[tokenCount] = -1;
+        broken[tokenCount] = false;
+        keywords[tokenCount] = 0;
+        tokenCount++;
+    }
+
+    private void addComment(int start, int end) {
+        if (commentCount == commentStarts.length) {
+            commentStarts = Arrays.copyOf(commentStarts, commentCount * 2);
+            commentEnds = Arrays.copyOf(commentEnds, commentCount * 2);
+        }
+        commentStarts[commentCount] = start;
+        commentEnds[commentCount] = end;
+        commentCount++;
+    }
+
+    int lineCount() {
+        return lineCount;
+    }
+
+    int firstToken(int line) {
+        return lineTokens[line];
+    }
+
+    int endToken(int line) {
+        return lineTokens[line + 1];
+    }
+
+    int lineOffset(int line) {
+        return lineOffsets[line];
+    }
+
+    int tokenCount() {
+        return tokenCount;
+    }
+
+    // Line holding the token: the last line starting at or before it
+    int lineOf(int token) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineTokens[middle] <= token) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // Line holding the character at offset
+    int lineAt(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineOffsets[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    int firstComment(int line) {
+        return lineComments[line];
+    }
+
+    int endComment(int line) {
+        return lineComments[line + 1];
+    }
+
+    int commentStart(int comment) {
+        return commentStarts[comment];
+    }
+
+    int commentEnd(int comment) {
+        return commentEnds[comment];
+    }
+
+    String commentText(int comment) {
+        return string(commentStarts[comment], commentEnds[comment]);
+    }
+
+    // Block comment still open at the end of the text, or -1
+    int unterminatedComment() {
+        return unterminatedComment;
+    }
+
+    // First token in [from, to) that is an unmatched bracket or an unterminated literal, -1 if there is none
+    int firstProblem(int from, int to) {
+        if (problemCount > 0) {
+            for (int i = from; i < to; i++) {
+                if (broken[i]) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Parentheses and square brackets left open at the end of the text, the text may continue in input
+    // not lexed yet. Braces are not counted, a ';' ends the statements inside them.
+    int openBrackets() {
+        int count = 0;
+        for (int k = 0; k < openCount; k++) {
+            if (kinds[open[k]] != '{') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The outermost of them, -1 if there is none
+    int firstOpenBracket() {
+        for (int k = 0; k < openCount; k++) {
+            if (kinds[open[k]] != '{') {
+                return open[k];
+            }
+        }
+        return -1;
+    }
+
+    // Whether the brace token is still open after the tokens before token end: it is not closed in
+    // front of end and was not cut off by a bracket closing around it
+    boolean braceOpenAt(int brace, int end) {
+        return !broken[brace] && (partners[brace] == -1 || partners[brace] >= end);
+    }
+
+    // Braces of the text before that '}' tokens in front of end closed
+    int outerBracesClosedBefore(int end) {
+        int closed = 0;
+        while (closed < outerCloseCount && outerCloses[closed] < end) {
+            closed++;
+        }
+        return closed;
+    }
+
+    // '}' tokens that found no brace of this text to close: they closed braces of the text before or
+    // are unmatched, depending on how many braces the text was lexed inside
+    int bracesClosedOutside() {
+        int count = outerCloseCount;
+        for (int t = 0; t < tokenCount; t++) {
+            if (kinds[t] == '}' && broken[t]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Whether the text ends inside a statement: parentheses, square brackets or a block comment still
+    // open, or a last statement without its ';' that the next line could continue
+    boolean endsInsideStatement() {
+        return openBrackets() > 0 || unterminatedComment != -1 || (tokenCount > 0 && kinds[tokenCount - 1] != ';');
+    }
+
+    int statementCount() {
+        if (statementCount == -1) {
+            statementCount = 0;
+            for (int first = 0; first < tokenCount; first = statementEnds[statementCount++]) {
+                if (statementCount == statementEnds.length) {
+                    statementEnds = Arrays.copyOf(statementEnds, statementCount * 2);
+                }
+                statementEnds[statementCount] = findStatementEnd(first);
+            }
+        }
+        return statementCount;
+    }
+
+    int statementEnd(int statement) {
+        return statementEnds[statement];
+    }
+
+    // First token of the statement holding the token
+    int statementStart(int token) {
+        int low = 0;
+        int high = statementCount() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (statementEnds[middle] > token) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low == 0 ? 0 : statementEnds[low - 1];
+    }
+
+    // End (exclusive) of the statement starting at token first. A statement ends after its ';' (with
+    // any further ';' on the same line, which the handlers reject) or at a line break, unless the
+    // statement obviously goes on: inside ( or [, after an operator, or before a line starting with one.
+    private int findStatementEnd(int first) {
+        int depth = 0;
+        for (int t = first; t < tokenCount; t++) {
+            int kind = kinds[t];
+            if (kind == ';') {
+                t++;
+                while (t < tokenCount && kinds[t] == ';' && !lineBreakBefore(t)) {
+                    t++;
+                }
+                return t;
+            }
+            if (kind == '(' || kind == '[') {
+                depth += partners[t] != -1 ? 1 : 0;
+            } else if (kind == ')' || kind == ']') {
+                depth -= partners[t] >= first ? 1 : 0;
+            }
+            if (t + 1 < tokenCount && depth == 0 && lineBreakBefore(t + 1)
+                    && !continuesAfter(kind) && !continuesBefore(kinds[t + 1])) {
+                return t + 1;
+            }
+        }
+        return tokenCount;
+    }
+
+    private boolean lineBreakBefore(int token) {
+        for (int i = ends[token - 1]; i < starts[token]; i++) {
+            if (source.charAt(i) == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean continuesAfter(int kind) {
+        return kind >= 0 && "=+-*/%&|^<>!?:,.".indexOf(kind) >= 0;
+    }
+
+    private static boolean continuesBefore(int kind) {
+        return kind >= 0 && "=+-*/%&|^<>?:,.;()[]".indexOf(kind) >= 0;
+    }
+
+    // The bracket matching a bracket token, -1 when it has none
+    int partner(int token) {
+        return partners[token];
+    }
+
+    int kind(int token) {
+        return kinds[token];
+    }
+
+    Keyword keyword(int token) {
+        return KEYWORDS[keywords[token]];
+    }
+
+    // Whether the token is a word equal to text, ignoring case
+    boolean wordEqualsIgnoreCase(int token, String text) {
+        if (kinds[token] != TT_WORD || ends[token] - starts[token] != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char a = source.charAt(starts[token] + i);
+            char b = text.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)
+                    && Character.toUpperCase(a) != Character.toUpperCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The lexed text, e.g. to look up a word's range in the symbol table without creating a String
+    CharSequence input() {
+        return source;
+    }
+
+    int start(int token) {
+        return starts[token];
+    }
+
+    int end(int token) {
+        return ends[token];
+    }
+
+    // Source text covered by the tokens [from, to)
+    String source(int from, int to) {
+        return from < to ? string(starts[from], ends[to - 1]) : "";
+    }
+
+    // Word text or decoded literal contents; null for numbers and ordinary characters
+    String text(int token) {
+        int kind = kinds[token];
+        if (kind == TT_WORD) {
+            return string(starts[token], ends[token]);
+        }
+        if (kind == '"' || kind == '\'') {
+            return unquote(token);
+        }
+        return null;
+    }
+
+    // Bytes are turned into the String directly, without a view over the range in between
+    private String string(int start, int end) {
+        return source instanceof ByteSequence ? ((ByteSequence) source).toString(start, end) : source.subSequence(start, end).toString();
+    }
+
+    // Same digit-by-digit conversion StreamTokenizer uses, without building a String
+    double number(int token) {
+        double value = 0;
+        int decimals = 0;
+        boolean seenDot = false;
+        for (int i = starts[token]; i < ends[token]; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                seenDot = true;
+            } else {
+                value = value * 10 + (c - '0');
+                if (seenDot) {
+                    decimals++;
+                }
+            }
+        }
+        double scale = 1;
+        while (decimals-- > 0) {
+            scale *= 10;
+        }
+        return value / scale;
+    }
+
+    private String unquote(int token) {
+        int quote = kinds[token];
+        int end = ends[token];
+        if (end - starts[token] > 1 && source.charAt(end - 1) == quote) {
+            end--;
+        }
+        StringBuilder result = new StringBuilder(end - starts[token]);
+        for (int i = starts[token] + 1; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                c = source.charAt(++i);
+                switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    default: break;
+                }
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    // Points the cursor at the tokens [from, to); nextToken() then walks them like a StreamTokenizer
+    void select(int from, int to) {
+        position = from;
+        limit = to;
+        current = -1;
+    }
+
+    // Index of the token nextToken() returns next, and the end of the selected range
+    int position() {
+        return position;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    // Index of the token last returned by nextToken(), -1 before the first one or past the end
+    int current() {
+        return current;
+    }
+
+    int nextToken() {
+        current = position < limit ? position++ : -1;
+        return ttype();
+    }
+
+    int ttype() {
+        return current == -1 ? TT_EOF : kinds[current];
+    }
+
+    String sval() {
+        return current == -1 ? null : text(current);
+    }
+
+    double nval() {
+        return current == -1 || kinds[current] != TT_NUMBER ? 0 : number(current);
+    }
+}
@@ -0,0 +1,170 @@
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Phase one of the analysis of large texts. The text is cut into chunks at the ends of lines closing
+// a statement, and batches of chunks are lexed concurrently: tokens, comments, bracket structure and
+// statement boundaries. Lexing runs one batch ahead of the caller, who takes the chunks in order and
+// does the sequential part (phase two). A cut may still turn out to be inside a statement, e.g. after
+// a ';' in a block comment, and chunks are lexed as if no brace was open in front of them; the caller
+// repairs both with relex.
+class ParallelLexer {
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    // Text to cut into chunks: the characters of a CharSequence or the bytes of a mapped file
+    abstract static class Source {
+
+        abstract int length();
+
+        abstract char charAt(int index);
+
+        // What the lexer reads for [start, end)
+        abstract CharSequence slice(int start, int end);
+
+        // Offset of the line the given number of lines after the one starting at offset
+        int skipLines(int offset, int lines) {
+            while (lines > 0) {
+                if (charAt(offset++) == '\n') {
+                    lines--;
+                }
+            }
+            return offset;
+        }
+
+        static Source of(CharSequence text) {
+            return new Source() {
+                @Override
+                int length() {
+                    return text.length();
+                }
+
+                @Override
+                char charAt(int index) {
+                    return text.charAt(index);
+                }
+
+                @Override
+                CharSequence slice(int start, int end) {
+                    return CharBuffer.wrap(text, start, end);
+                }
+            };
+        }
+
+        // The first length bytes of a buffer; ASCII chunks are lexed over the bytes, others are decoded as UTF-8
+        static Source of(ByteBuffer bytes, int length) {
+            return new Source() {
+                @Override
+                int length() {
+                    return length;
+                }
+
+                @Override
+                char charAt(int index) {
+                    return (char) (bytes.get(index) & 0xff);
+                }
+
+                @Override
+                CharSequence slice(int start, int end) {
+                    return ByteSequence.of(bytes, start, end);
+                }
+            };
+        }
+    }
+
+    static final class Chunk {
+        final Lexer lexer = new Lexer();
+        int start;
+        int end;
+        int outerBraces; // braces open in front of the chunk it was lexed inside
+        long lexNanos; // time the last lex of the chunk took
+    }
+
+    private final Source source;
+    private final int batchSize;
+
+    // Chunks of batches already analyzed, reused so their lexer arrays are only grown once
+    private final ArrayDeque<Chunk> spare = new ArrayDeque<>();
+    private CompletableFuture<Chunk[]> lexing;
+    private Chunk[] batch = new Chunk[0];
+    private int index;
+
+    ParallelLexer(Source source, int batchSize) {
+        this.source = source;
+        this.batchSize = batchSize;
+        schedule(0);
+    }
+
+    // The next chunk, already lexed, or null after the last one
+    Chunk next() {
+        if (index == batch.length) {
+            spare.addAll(Arrays.asList(batch));
+            batch = lexing.join();
+            index = 0;
+            if (batch.length == 0) {
+                return null;
+            }
+            schedule(batch[batch.length - 1].end);
+        }
+        return batch[index++];
+    }
+
+    // Lexes the chunk again starting at an earlier offset, to take in a statement cut off in front of it,
+    // inside the braces still open in front of that
+    void relex(Chunk chunk, int start, int outerBraces) {
+        chunk.start = start;
+        chunk.outerBraces = outerBraces;
+        lex(chunk);
+    }
+
+    // Waits for the batch still being lexed, so nothing reads the source after the caller is done
+    void close() {
+        lexing.join();
+    }
+
+    private void schedule(int from) {
+        List<Chunk> chunks = new ArrayList<>(batchSize);
+        for (int start = from; start < source.length() && chunks.size() < batchSize; ) {
+            Chunk chunk = spare.isEmpty() ? new Chunk() : spare.pop();
+            chunk.start = start;
+            chunk.end = cut(start + CHUNK_SIZE);
+            chunk.outerBraces = 0;
+            chunks.add(chunk);
+            start = chunk.end;
+        }
+        Chunk[] scheduled = chunks.toArray(new Chunk[0]);
+        lexing = scheduled.length == 0 ? CompletableFuture.completedFuture(scheduled)
+                : CompletableFuture.supplyAsync(() -> {
+                    Arrays.stream(scheduled).parallel().forEach(this::lex);
+                    return scheduled;
+                });
+    }
+
+    private void lex(Chunk chunk) {
+        long started = System.nanoTime();
+        chunk.lexer.lex(source.slice(chunk.start, chunk.end), chunk.outerBraces);
+        chunk.lexer.statementCount();
+        chunk.lexNanos = System.nanoTime() - started;
+    }
+
+    // End of the first line from offset on whose last visible character is ';', or the end of the text
+    private int cut(int offset) {
+        int length = source.length();
+        for (int i = offset; i < length; i++) {
+            if (source.charAt(i) == '\n') {
+                int last = i - 1;
+                while (last >= offset && source.charAt(last) <= ' ') {
+                    last--;
+                }
+                if (last >= offset && source.charAt(last) == ';') {
+                    return i + 1;
+                }
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,287 @@
+import java.util.Arrays;
+
+// Symbol table keeping the declared type and the value of every variable in parallel arrays.
+// Primitive values are stored as raw bits in a long (the double bits for float/double), so nothing
+// is boxed; only String values need an object slot. The table is open addressing with linear probing,
+// names are stored once and can be looked up straight from a character range of the source.
+class SymbolTable {
+
+    static final byte BYTE = 0;
+    static final byte SHORT = 1;
+    static final byte INT = 2;
+    static final byte LONG = 3;
+    static final byte FLOAT = 4;
+    static final byte DOUBLE = 5;
+    static final byte BOOLEAN = 6;
+    static final byte CHAR = 7;
+    static final byte STRING = 8;
+    static final byte UNKNOWN = -1;
+
+    private static final String[] TYPE_NAMES = {
+            "byte", "short", "int", "long", "float", "double", "boolean", "char", "String"
+    };
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private byte[] types = new byte[64];
+    private long[] values = new long[64];
+    private String[] strings = new String[64];
+    private int size;
+
+    // Order-independent hash of all entries, kept up to date on every write so that two tables
+    // with the same contents can be recognised cheaply (used by the incremental analyzer)
+    private long fingerprint;
+
+    // Slots written since the last resetWritten, in order; only kept while recordWrites is on, so a
+    // streamed analysis does not log every statement
+    private boolean recordWrites;
+    private int[] written = new int[8];
+    private int writtenCount;
+
+    static String typeName(byte type) {
+        return type == UNKNOWN ? "unknown" : TYPE_NAMES[type];
+    }
+
+    static boolean isIntegral(byte type) {
+        return type <= LONG;
+    }
+
+    static boolean isFloatingPoint(byte type) {
+        return type == FLOAT || type == DOUBLE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Slot of the variable named by text[start, end), or -1; does not allocate
+    int find(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = names.length - 1;
+        for (int slot = hash & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(names[slot], text, start, end)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    int find(String name) {
+        return find(name, 0, name.length());
+    }
+
+    // Declares or redeclares a variable and returns its slot; the string is only kept for a String
+    int declare(String name, byte type, long value, String string) {
+        int slot = find(name);
+        if (slot == -1) {
+            if ((size + 1) * 3 > names.length * 2) {
+                grow();
+            }
+            int hash = hash(name, 0, name.length());
+            int mask = names.length - 1;
+            slot = hash & mask;
+            while (names[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            hashes[slot] = hash;
+            size++;
+        } else {
+            fingerprint ^= entryHash(slot);
+        }
+        types[slot] = type;
+        values[slot] = value;
+        strings[slot] = type == STRING ? string : null;
+        fingerprint ^= entryHash(slot);
+        logWrite(slot);
+        return slot;
+    }
+
+    void assign(int slot, long value, String string) {
+        fingerprint ^= entryHash(slot);
+        values[slot] = value;
+        strings[slot] = types[slot] == STRING ? string : null;
+        fingerprint ^= entryHash(slot);
+        logWrite(slot);
+    }
+
+    private void logWrite(int slot) {
+        if (!recordWrites) {
+            return;
+        }
+        if (writtenCount == written.length) {
+            written = Arrays.copyOf(written, writtenCount * 2);
+        }
+        written[writtenCount++] = slot;
+    }
+
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    // Number of declare/assign calls since resetWritten, and the slot each of them wrote
+    int writtenCount() {
+        return writtenCount;
+    }
+
+    int written(int index) {
+        return written[index];
+    }
+
+    void resetWritten() {
+        writtenCount = 0;
+    }
+
+    // Turns the write log on or off; it starts out empty either way
+    void recordWrites(boolean record) {
+        recordWrites = record;
+        writtenCount = 0;
+    }
+
+    // Occupied slot after the given one (-1 to start), -1 after the last; walks all variables
+    int nextSlot(int slot) {
+        for (int next = slot + 1; next < names.length; next++) {
+            if (names[next] != null) {
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    String name(int slot) {
+        return names[slot];
+    }
+
+    byte type(int slot) {
+        return types[slot];
+    }
+
+    long longValue(int slot) {
+        return values[slot];
+    }
+
+    String stringValue(int slot) {
+        return strings[slot];
+    }
+
+    // The value as the analyzer prints it
+    String format(int slot) {
+        return format(types[slot], values[slot], strings[slot]);
+    }
+
+    static String format(byte type, long value, String string) {
+        switch (type) {
+            case FLOAT:
+                return String.valueOf((float) Double.longBitsToDouble(value));
+            case DOUBLE:
+                return String.valueOf(Double.longBitsToDouble(value));
+            case BOOLEAN:
+                return String.valueOf(value != 0);
+            case CHAR:
+                return String.valueOf((char) value);
+            case STRING:
+                return string;
+            default:
+                return String.valueOf(value);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(names, null);
+        Arrays.fill(strings, null);
+        size = 0;
+        fingerprint = 0;
+        writtenCount = 0;
+    }
+
+    SymbolTable copy() {
+        SymbolTable copy = new SymbolTable();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    void copyFrom(SymbolTable other) {
+        names = other.names.clone();
+        hashes = other.hashes.clone();
+        types = other.types.clone();
+        values = other.values.clone();
+        strings = other.strings.clone();
+        size = other.size;
+        fingerprint = other.fingerprint;
+        writtenCount = 0;
+    }
+
+    // All fields of the entry go through one chain of avalanche steps before the entry is XORed into
+    // the fingerprint; hashing the fields separately would let two variables swap values unnoticed
+    private long entryHash(int slot) {
+        long hash = mix(hashes[slot] * 0x9E3779B97F4A7C15L + types[slot]);
+        hash = mix(hash + values[slot]);
+        return mix(hash + (strings[slot] != null ? strings[slot].hashCode() : 0x2545F4914F6CDD1DL));
+    }
+
+    // Final step of MurmurHash3's 64-bit hash: every input bit affects every output bit
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private void grow() {
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        byte[] oldTypes = types;
+        long[] oldValues = values;
+        String[] oldStrings = strings;
+
+        int capacity = oldNames.length * 2;
+        names = new String[capacity];
+        hashes = new int[capacity];
+        types = new byte[capacity];
+        values = new long[capacity];
+        strings = new String[capacity];
+
+        int mask = capacity - 1;
+        int[] moved = new int[oldNames.length];
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = oldNames[i];
+                hashes[slot] = oldHashes[i];
+                types[slot] = oldTypes[i];
+                values[slot] = oldValues[i];
+                strings[slot] = oldStrings[i];
+                moved[i] = slot;
+            }
+        }
+        // The write log refers to slots, which have just moved
+        for (int i = 0; i < writtenCount; i++) {
+            written[i] = moved[written[i]];
+        }
+    }
+
+    // Same as String.hashCode, spread so that linear probing copes with sequential names
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,19 +1,477 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
 
 public class SyntaxAnalyzer {
 
-    private static Map<String, Object> variables = new HashMap<>();
-    private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList(
-            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue",
-            "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "goto",
-            "if", "implements", "import", "instanceof", "int", "interface", "long", "native", "new", "null",
-            "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super", "switch",
-            "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while"
-    ));
+    // Files at least this big are memory-mapped in batch mode, mapped in windows of MAP_WINDOW_SIZE bytes
+    private static final long MAPPED_FILE_THRESHOLD = 16L * 1024 * 1024;
+    private static final long MAP_WINDOW_SIZE = 256L * 1024 * 1024;
+    // Lines read ahead at most while a statement, parentheses, square brackets or a block comment are
+    // open, before the text is analyzed as it is. Open braces are carried along instead, see braceCount.
+    private static final int MAX_CONTINUED_LINES = 256;
+    // Blocks at least this long are lexed in parallel chunks when there is more than one processor
+    private static final int PARALLEL_THRESHOLD = 4 * ParallelLexer.CHUNK_SIZE;
+    private static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+    private static final long DEFAULT_CACHE_DIRECTORY_SIZE = 1024L * 1024 * 1024;
+    // Results of evaluateValue
+    private static final int VALUE_VALID = 0;
+    private static final int VALUE_MISMATCH = 1; // not a value of the type, the caller reports the mismatch
+    private static final int VALUE_INVALID = 2; // an error in the expression, reported
+
+    // Analyzers are reused per thread, so concurrent analyses never share state and still reuse
+    // the lexer arrays, symbol table and expression cache of earlier runs on the same thread
+    private static final ThreadLocal<SyntaxAnalyzer> POOL = ThreadLocal.withInitial(SyntaxAnalyzer::new);
+
+    // Per-analysis state, reset at the start of every analyze call
+    private final SymbolTable variables = new SymbolTable();
+    private DiagnosticSink diagnostics;
+    private int[] lineNumbers = new int[64]; // number reported for every lexer line, comment lines share the next one
+    private int heldBackLine; // see analyzeLexed
+    // Braces opened in the text analyzed so far and not closed yet, outermost first: the line number and
+    // column they are reported with if the input ends before they are closed
+    private int[] braceLines = new int[16];
+    private int[] braceColumns = new int[16];
+    private int braceCount;
+    private int[] reach = new int[64]; // see exceedsReadAhead
+    private int statementStart; // first token of the statement, where valid results are reported
+
+    // Evaluates initializers, assigned values and print arguments; holds the last value
+    private final Expression expression = new Expression();
+    private final Lexer ownLexer = new Lexer();
+    private Lexer lexer = ownLexer; // a chunk's lexer during the parallel analysis
+    private int resumeOffset; // see analyzeParallel
+    private long resumePosition; // see analyzeMapped
+    private CharsetDecoder utf8; // see analyzeStream(InputStream), created for the first line that is not ASCII
+    private CharBuffer decoded = CharBuffer.allocate(0);
+    private AnalyzerMetrics.Recorder recorder; // created the first time metrics are enabled
+    private AnalyzerMetrics.Recorder metrics; // the recorder while metrics are enabled, otherwise null
+    private boolean timed; // whether the statement being analyzed is a metrics sample
+
+    public SyntaxAnalyzer() {
+    }
+
+    // The analyzer pooled for the calling thread. An instance must only be used by one thread at a time,
+    // this is the cheap way to get one in a multi-threaded caller.
+    public static SyntaxAnalyzer forCurrentThread() {
+        return POOL.get();
+    }
+
+    public Diagnostics analyze(CharSequence code) {
+        return analyze(code, new Diagnostics());
+    }
+
+    public Diagnostics analyze(Reader input) throws IOException {
+        return analyze(input, new Diagnostics());
+    }
+
+    public Diagnostics analyze(InputStream input) throws IOException {
+        return analyze(input, new Diagnostics());
+    }
+
+    // The variants taking a sink hand every diagnostic to it as soon as it is produced
+    public <S extends DiagnosticSink> S analyze(CharSequence code, S sink) {
+        begin(sink);
+        try {
+            if (code.length() >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1) {
+                analyzeParallel(ParallelLexer.Source.of(code), 1, true);
+            } else {
+                // The whole block is tokenized once, the lines are then analyzed from the token stream
+                lex(code);
+                if (exceedsReadAhead()) {
+                    analyzeByLines(ParallelLexer.Source.of(code), 0, 1, true);
+                } else {
+                    analyzeLexed(1, false); // Start line numbering from 1
+                }
+            }
+            reportOpenBraces();
+        } finally {
+            end();
+        }
+        return sink;
+    }
+
+    public <S extends DiagnosticSink> S analyze(Reader input, S sink) throws IOException {
+        begin(sink);
+        try {
+            analyzeStream(input);
+            reportOpenBraces();
+        } finally {
+            end();
+        }
+        return sink;
+    }
+
+    // UTF-8 bytes, e.g. a file or standard input; see analyzeStream(InputStream)
+    public <S extends DiagnosticSink> S analyze(InputStream input, S sink) throws IOException {
+        begin(sink);
+        try {
+            analyzeStream(input);
+            reportOpenBraces();
+        } finally {
+            end();
+        }
+        return sink;
+    }
+
+    public <S extends DiagnosticSink> S analyzeMapped(Path file, S sink) throws IOException {
+        begin(sink);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            analyzeMapped(channel, 0, channel.size(), 1, true);
+            reportOpenBraces();
+        } finally {
+            end();
+        }
+        return sink;
+    }
+
+    // Analyzes the file from a snapshot (from its start when null) up to the byte offset end and returns
+    // the snapshot after the last statement analyzed; end is the file size to analyze all of it.
+    // A statement cut off by end is left for the next part. At the end of the file it is still reported,
+    // but the snapshot stays in front of it, so once the file has grown it is read again with what was
+    // appended.
+    public <S extends DiagnosticSink> AnalysisSnapshot analyzeFile(Path file, AnalysisSnapshot from, long end, S sink) throws IOException {
+        begin(sink);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (end < 0 || end > size) {
+                throw new IllegalArgumentException("End offset " + end + " outside of " + file + " (" + size + " bytes)");
+            }
+            if (from != null && (from.offset > end || !from.resumesInto(channel))) {
+                throw new IllegalArgumentException("Snapshot at offset " + from.offset + " does not match " + file);
+            }
+            long start = 0;
+            int actualLineNumber = 1;
+            if (from != null) {
+                variables.copyFrom(from.variables);
+                braceCount = from.braces.length / 2;
+                if (braceLines.length < braceCount) {
+                    braceLines = new int[braceCount];
+                    braceColumns = new int[braceCount];
+                }
+                for (int i = 0; i < braceCount; i++) {
+                    braceLines[i] = from.braces[2 * i];
+                    braceColumns[i] = from.braces[2 * i + 1];
+                }
+                start = from.offset;
+                actualLineNumber = from.lineNumber;
+            }
+
+            actualLineNumber = analyzeMapped(channel, start, end, actualLineNumber, false);
+            long resume = resumePosition;
+            int[] braces = new int[2 * braceCount];
+            for (int i = 0; i < braceCount; i++) {
+                braces[2 * i] = braceLines[i];
+                braces[2 * i + 1] = braceColumns[i];
+            }
+            AnalysisSnapshot snapshot = new AnalysisSnapshot(variables.copy(), braces, actualLineNumber, resume,
+                    AnalysisSnapshot.checksum(channel, resume));
+            if (end == size) {
+                if (resume < size) {
+                    analyzeMapped(channel, resume, size, actualLineNumber, true);
+                }
+                reportOpenBraces();
+            }
+            return snapshot;
+        } finally {
+            end();
+        }
+    }
+
+    private void begin(DiagnosticSink sink) {
+        if (this.diagnostics != null) {
+            throw new IllegalStateException("SyntaxAnalyzer is already running an analysis");
+        }
+        this.diagnostics = sink;
+        variables.clear();
+        braceCount = 0;
+        metrics = null;
+        if (AnalyzerMetrics.GLOBAL.isEnabled()) {
+            if (recorder == null) {
+                recorder = new AnalyzerMetrics.Recorder();
+            }
+            metrics = recorder;
+            metrics.begin();
+        }
+    }
+
+    private void end() {
+        diagnostics = null;
+        if (metrics != null) {
+            metrics.finish(variables.size());
+            metrics = null;
+        }
+        // Drop the reference to the analyzed text so it can be collected
+        lexer = ownLexer;
+        lexer.lex("");
+    }
+
+    // Unit-at-a-time analysis for callers that manage the state themselves (incremental analysis):
+    // startSession resets the state, then each analyzed unit of lines continues from the current variables
+    void startSession(DiagnosticSink sink) {
+        begin(sink);
+    }
+
+    void finishSession() {
+        end();
+    }
+
+    void redirect(DiagnosticSink sink) {
+        diagnostics = sink;
+    }
+
+    SymbolTable variables() {
+        return variables;
+    }
+
+    // Braces left open by the units analyzed so far. A unit is lexed inside the braces set here; their
+    // positions are the caller's business, it reports the ones never closed.
+    int openBraces() {
+        return braceCount;
+    }
+
+    void setOpenBraces(int count) {
+        if (braceLines.length < count) {
+            braceLines = Arrays.copyOf(braceLines, count);
+            braceColumns = Arrays.copyOf(braceColumns, count);
+        }
+        braceCount = count;
+    }
+
+    // Line number (as the unit was analyzed) and column of an open brace
+    int braceLine(int brace) {
+        return braceLines[brace];
+    }
+
+    int braceColumn(int brace) {
+        return braceColumns[brace];
+    }
+
+    // Braces open in front of the unit analyzed last that it closed
+    int bracesClosedByUnit() {
+        return lexer.outerBracesClosedBefore(lexer.tokenCount());
+    }
 
+    // Lexes a unit of lines, returns false when its last statement may go on in the lines after it
+    boolean lexUnit(CharSequence lines) {
+        lex(lines);
+        return !lexer.endsInsideStatement();
+    }
+
+    // Analyzes the unit lexed last and returns the line number of the line after it
+    int analyzeUnit(int lineNumber) {
+        return analyzeLexed(lineNumber, false);
+    }
+
+    // Reports at the token the handler is looking at, or for the whole statement when there is none
+    private void report(Diagnostic.Code code, int lineNumber, String message) {
+        report(code, lineNumber, lexer.current(), message);
+    }
+
+    private void report(Diagnostic.Code code, int lineNumber, int token, String message) {
+        if (token == -1) {
+            emit(code, lineNumber, 0, message);
+        } else {
+            reportAt(code, lexer.start(token), message);
+        }
+    }
+
+    // Reports with the line and column of the character at offset, statements may span several lines
+    private void reportAt(Diagnostic.Code code, int offset, String message) {
+        int line = lexer.lineAt(offset);
+        emit(code, lineNumbers[line], offset - lexer.lineOffset(line) + 1, message);
+    }
+
+    // Every diagnostic goes out through here
+    private void emit(Diagnostic.Code code, int lineNumber, int column, String message) {
+        if (metrics != null) {
+            metrics.diagnostic(code);
+        }
+        diagnostics.report(code, lineNumber, column, message);
+    }
+
+    // Lexes the text inside the braces still open
+    private void lex(CharSequence text) {
+        if (metrics == null || !metrics.sample(AnalyzerMetrics.Stage.LEX)) {
+            lexer.lex(text, braceCount);
+            return;
+        }
+        long started = System.nanoTime();
+        lexer.lex(text, braceCount);
+        metrics.record(AnalyzerMetrics.Stage.LEX, System.nanoTime() - started);
+    }
+
+    // Usage: SyntaxAnalyzer [--format=text|jsonl|binary] [-j threads] [--metrics[=text|json] [--metrics-interval=seconds]]
+    //                      [- | --watch <file> | --server[=port|unix:path] | <file|directory|glob>...
+    //                         | --snapshot=<snapshot> [--until=bytes] <file>]
+    //                      [--cache[=size] [--cache-dir=<directory> [--cache-dir-size=size]]]
+    // Without inputs the analyzer runs interactively, "-" streams standard input until its end,
+    // --watch re-analyzes a file incrementally whenever it changes, --server runs the analysis daemon.
+    // --snapshot resumes the analysis of a file from the snapshot file when it still matches and saves
+    // the new snapshot there; --until stops at a byte offset, to analyze a huge file in shards.
+    // --metrics records analyzer metrics and dumps them to standard error at exit and every interval;
+    // they are also published over JMX, where the server and watch modes can switch them on at runtime.
+    // --cache answers blocks identical to one analyzed before from a result cache of the given size in
+    // memory (64m by default), --cache-dir keeps the results on disk as well (1g by default); sizes are
+    // bytes with an optional k, m or g. It applies to the server, interactive and batch modes.
     public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
+        // Everything the command line reads and writes is UTF-8, like the files it analyzes: the
+        // diagnostics, the prompts and messages on the console and the code typed in interactively
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(new FileOutputStream(FileDescriptor.err), true, StandardCharsets.UTF_8));
+
+        String format = "text";
+        String metricsFormat = null;
+        long metricsInterval = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> inputs = new ArrayList<>();
+        String watched = null;
+        String serverAddress = null;
+        String snapshot = null;
+        long until = -1;
+        long cacheSize = -1;
+        String cacheDirectory = null;
+        long cacheDirectorySize = DEFAULT_CACHE_DIRECTORY_SIZE;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].equals("--metrics")) {
+                metricsFormat = "text";
+            } else if (args[i].startsWith("--metrics=")) {
+                metricsFormat = args[i].substring("--metrics=".length());
+            } else if (args[i].startsWith("--metrics-interval=")) {
+                try {
+                    metricsInterval = Long.parseLong(args[i].substring("--metrics-interval=".length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid metrics interval: " + args[i]);
+                    System.exit(2);
+                }
+            } else if (args[i].startsWith("--snapshot=")) {
+                snapshot = args[i].substring("--snapshot=".length());
+            } else if (args[i].startsWith("--until=")) {
+                try {
+                    until = Long.parseLong(args[i].substring("--until=".length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid offset: " + args[i]);
+                    System.exit(2);
+                }
+            } else if (args[i].equals("--cache")) {
+                cacheSize = DEFAULT_CACHE_SIZE;
+            } else if (args[i].startsWith("--cache=")) {
+                cacheSize = parseSize(args[i], "--cache=");
+            } else if (args[i].startsWith("--cache-dir=")) {
+                cacheDirectory = args[i].substring("--cache-dir=".length());
+            } else if (args[i].startsWith("--cache-dir-size=")) {
+                cacheDirectorySize = parseSize(args[i], "--cache-dir-size=");
+            } else if (args[i].equals("--server")) {
+                serverAddress = String.valueOf(AnalysisServer.DEFAULT_PORT);
+            } else if (args[i].startsWith("--server=")) {
+                serverAddress = args[i].substring("--server=".length());
+            } else if (args[i].equals("--watch") && i + 1 < args.length) {
+                watched = args[++i];
+            } else if (args[i].equals("-j") && i + 1 < args.length) {
+                try {
+                    threads = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid thread count: " + args[i]);
+                    System.exit(2);
+                }
+            } else {
+                inputs.add(args[i]);
+            }
+        }
+
+        DiagnosticWriter writer;
+        try {
+            writer = DiagnosticWriter.create(format, System.out);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        if (metricsFormat != null) {
+            if (!metricsFormat.equals("text") && !metricsFormat.equals("json")) {
+                System.err.println("Unknown metrics format: " + metricsFormat + " (expected text or json)");
+                System.exit(2);
+            }
+            String dumpFormat = metricsFormat;
+            AnalyzerMetrics.GLOBAL.setEnabled(true);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(AnalyzerMetrics.GLOBAL.dump(dumpFormat))));
+            if (metricsInterval > 0) {
+                AnalyzerMetrics.dumpPeriodically(metricsFormat, metricsInterval, System.err);
+            }
+        }
+        if (metricsFormat != null || serverAddress != null || watched != null) {
+            AnalyzerMetrics.register();
+        }
+
+        AnalysisCache cache = null;
+        if (cacheSize != -1 || cacheDirectory != null) {
+            long memorySize = cacheSize != -1 ? cacheSize : DEFAULT_CACHE_SIZE;
+            try {
+                cache = cacheDirectory == null ? new AnalysisCache(memorySize)
+                        : new AnalysisCache(memorySize, Paths.get(cacheDirectory), cacheDirectorySize);
+            } catch (IOException e) {
+                System.err.println("Error: cannot use cache directory " + cacheDirectory + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (serverAddress != null) {
+            try {
+                new AnalysisServer(format, cache).serve(serverAddress);
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Error: cannot serve on " + serverAddress + ": " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (watched != null) {
+            try {
+                IncrementalAnalyzer.watch(Paths.get(watched), writer);
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        if (inputs.size() == 1 && inputs.get(0).equals("-")) {
+            try {
+                new SyntaxAnalyzer().analyze(System.in, writer);
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (snapshot != null) {
+            if (inputs.size() != 1) {
+                System.err.println("--snapshot takes exactly one input file");
+                System.exit(2);
+            }
+            System.exit(runResumed(Paths.get(inputs.get(0)), Paths.get(snapshot), until, writer));
+        }
+        if (!inputs.isEmpty()) {
+            System.exit(runBatch(inputs, threads, writer, cache));
+        }
+
+        Scanner scanner = new Scanner(System.in, StandardCharsets.UTF_8);
+        SyntaxAnalyzer analyzer = new SyntaxAnalyzer();
+        AnalysisCache blockCache = cache;
 
         while (true) {
             StringBuilder codeBlock = new StringBuilder();
@@ -25,7 +483,16 @@ public class SyntaxAnalyzer {
                 String input = scanner.nextLine();
                 if (input.trim().equalsIgnoreCase("done")) {
                     System.out.println("\nAnalyzing the code block...\n");
-                    analyzeBlock(codeBlock.toString());
+                    if (blockCache != null) {
+                        blockCache.analyze(codeBlock, writer);
+                    } else {
+                        analyzer.analyze(codeBlock, writer);
+                    }
+                    try {
+                        writer.flush();
+                    } catch (IOException e) {
+                        System.err.println("Error: " + e.getMessage());
+                    }
 
                     System.out.println("\n------------- End of analysis -------------\n");
                     break;
@@ -40,102 +507,709 @@ public class SyntaxAnalyzer {
         }
     }
 
-    private static void analyzeBlock(String codeBlock) {
-        String[] lines = codeBlock.split("\\n");
-        int actualLineNumber = 1; // Start line numbering from 1
+    // A size in bytes with an optional k, m or g suffix; exits on anything else
+    private static long parseSize(String arg, String option) {
+        String size = arg.substring(option.length()).toLowerCase(Locale.ROOT);
+        int shift = 0;
+        if (size.endsWith("k")) {
+            shift = 10;
+        } else if (size.endsWith("m")) {
+            shift = 20;
+        } else if (size.endsWith("g")) {
+            shift = 30;
+        }
+        try {
+            long value = Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1));
+            if (value >= 0 && value <= Long.MAX_VALUE >> shift) {
+                return value << shift;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println("Invalid size: " + arg);
+        System.exit(2);
+        return -1;
+    }
 
-        for (String line : lines) {
-            String trimmedLine = line.trim();
-            // Analyze the line, passing the current line number
-            analyzeLine(trimmedLine, actualLineNumber);
+    // Batch mode: every file is analyzed on the worker pool with its own analyzer,
+    // the diagnostics are written in input order. At most threads * 2 files are analyzed ahead of the one
+    // being written, so only their reports wait in memory. A file big enough for the mapped analysis is
+    // analyzed when its turn comes, straight into the writer, its report could be bigger than the heap.
+    private static int runBatch(List<String> inputs, int threads, DiagnosticWriter writer, AnalysisCache cache) {
+        List<Path> files = new ArrayList<>();
+        int exitCode = 0;
+
+        for (String input : inputs) {
+            try {
+                List<Path> matched = expandArgument(input);
+                if (matched.isEmpty()) {
+                    System.err.println("No files matched: " + input);
+                    exitCode = 1;
+                }
+                files.addAll(matched);
+            } catch (NoSuchFileException e) {
+                System.err.println("No such file or directory: " + e.getFile());
+                exitCode = 1;
+            } catch (IOException e) {
+                System.err.println("Cannot read " + input + ": " + e.getMessage());
+                exitCode = 1;
+            }
+        }
 
-            // Increment the line number if it's not a comment
-            if (!trimmedLine.startsWith("//") && !trimmedLine.isEmpty()) {
-                actualLineNumber++; // Increment only for actual code lines
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Diagnostics>> reports = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                // Only a few files are analyzed ahead of the one being written, their reports wait in memory
+                while (reports.size() < files.size() && reports.size() < i + threads * 2) {
+                    Path file = files.get(reports.size());
+                    reports.add(isMapped(file) ? null : pool.submit(() -> analyzeFile(file, cache)));
+                }
+                Path file = files.get(i);
+                writer.startSource(file.toString());
+                try {
+                    if (reports.get(i) == null) {
+                        // Too big to hold the report, written as it is produced
+                        forCurrentThread().analyzeMapped(file, writer);
+                    } else {
+                        reports.get(i).get().replay(writer);
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    System.err.println("Error: " + file + ": " + (cause.getMessage() != null ? cause.getMessage() : cause));
+                    exitCode = 1;
+                } catch (IOException | UncheckedIOException e) {
+                    System.err.println("Error: " + file + ": " + e.getMessage());
+                    exitCode = 1;
+                }
+                writer.endSource();
+                // Drop the finished report, it is not needed anymore
+                reports.set(i, null);
             }
+            writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = 1;
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            exitCode = 1;
+        } finally {
+            pool.shutdown();
         }
+        return exitCode;
     }
 
-    private static void analyzeLine(String input, int lineNumber) {
-        // Ignores the empty lines
-        if (input.isEmpty()) {
-            return;
+    // Snapshot mode: analyzes the file from the saved snapshot, or from the start when there is none or
+    // the file no longer matches it, up to until (-1 for the end), and saves the new snapshot
+    private static int runResumed(Path file, Path snapshotFile, long until, DiagnosticWriter writer) {
+        try {
+            AnalysisSnapshot from = null;
+            if (Files.exists(snapshotFile)) {
+                from = AnalysisSnapshot.read(snapshotFile);
+                if (!from.resumesInto(file) || (until != -1 && from.offset() > until)) {
+                    System.err.println("Snapshot " + snapshotFile + " does not match " + file + ", analyzing from the start");
+                    from = null;
+                }
+            }
+            long end = until != -1 ? Math.min(until, Files.size(file)) : Files.size(file);
+            writer.startSource(file.toString());
+            AnalysisSnapshot snapshot = new SyntaxAnalyzer().analyzeFile(file, from, end, writer);
+            writer.endSource();
+            writer.flush();
+            snapshot.write(snapshotFile);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
         }
+    }
 
-        // Check for comments at the start of a line
-        if (input.startsWith("//")) {
-            System.out.println(input);
-            return;
+    // Whether the file is big enough for the mapped analysis; its report is then not collected but written
+    // straight out when its turn comes
+    private static boolean isMapped(Path file) {
+        try {
+            return Files.size(file) >= MAPPED_FILE_THRESHOLD;
+        } catch (IOException e) {
+            return false; // Reported by analyzeFile
         }
+    }
 
-        // Output any comments found in the line
-        int commentIndex = input.indexOf("//");
-        if (commentIndex != -1) {
-            // Print the comment part
-            String comment = input.substring(commentIndex);
-            System.out.println(comment.trim()); // Print the comment
-            input = input.substring(0, commentIndex).trim(); // Keep the part before the comment for analysis
+    private static Diagnostics analyzeFile(Path file, AnalysisCache cache) throws IOException {
+        SyntaxAnalyzer analyzer = forCurrentThread();
+        long size = Files.size(file);
+        if (cache != null && size <= AnalysisCache.MAX_BLOCK_LENGTH) {
+            byte[] content = Files.readAllBytes(file);
+            return cache.analyze(ByteSequence.of(ByteBuffer.wrap(content), 0, content.length), new Diagnostics());
+        }
+        try (InputStream input = Files.newInputStream(file)) {
+            return analyzer.analyze(input);
         }
+    }
 
-        // If there's no code left after the comment, ignores again
-        if (input.isEmpty()) {
-            return;
+    // Turns a command line argument into files: a plain file, every file under a directory,
+    // or the files matching a glob such as src/**/*.java
+    private static List<Path> expandArgument(String arg) throws IOException {
+        List<Path> result = new ArrayList<>();
+        int globStart = indexOfGlob(arg);
+        if (globStart == -1) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    walk.filter(Files::isRegularFile).sorted().forEach(result::add);
+                }
+            } else if (Files.isRegularFile(path)) {
+                result.add(path);
+            } else {
+                throw new NoSuchFileException(arg);
+            }
+            return result;
+        }
+
+        // Walk from the directory part in front of the first wildcard
+        int separator = Math.max(arg.lastIndexOf('/', globStart), arg.lastIndexOf(File.separatorChar, globStart));
+        Path base = separator == -1 ? Paths.get(".") : Paths.get(arg.substring(0, separator + 1));
+        String pattern = separator == -1 ? arg : arg.substring(separator + 1);
+        PathMatcher matcher = base.getFileSystem().getPathMatcher("glob:" + pattern);
+        if (!Files.isDirectory(base)) {
+            throw new NoSuchFileException(base.toString());
+        }
+        try (Stream<Path> walk = Files.walk(base)) {
+            walk.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(base.relativize(p)))
+                    .sorted()
+                    .forEach(result::add);
+        }
+        return result;
+    }
+
+    private static int indexOfGlob(String arg) {
+        for (int i = 0; i < arg.length(); i++) {
+            char ch = arg.charAt(i);
+            if (ch == '*' || ch == '?' || ch == '[' || ch == '{') {
+                return i;
+            }
         }
+        return -1;
+    }
+
+    // Streaming analysis: every line is lexed and analyzed as soon as it has been read, so results
+    // show up immediately and memory is bounded by the longest statement instead of the whole input.
+    // A statement that may still go on is kept and lexed again with the next line, for at most
+    // MAX_CONTINUED_LINES lines; braces still open are carried to the next line instead.
+    private void analyzeStream(Reader input) throws IOException {
+        char[] buffer = new char[8192];
+        CharBuffer view = CharBuffer.wrap(buffer);
+        int filled = 0;
+        int scanned = 0;
+        int lineStart = 0;
+        int pendingLines = 0;
+        int actualLineNumber = 1;
+
+        while (true) {
+            int read = input.read(buffer, filled, buffer.length - filled);
+            if (read == -1) {
+                if (lineStart < filled) {
+                    view.limit(filled).position(lineStart);
+                    lex(view);
+                    analyzeLexed(actualLineNumber, false);
+                }
+                return;
+            }
+            filled += read;
+
+            for (; scanned < filled; scanned++) {
+                if (buffer[scanned] == '\n') {
+                    // The lexer reads the line through the view, no String is created for it
+                    view.limit(scanned).position(lineStart);
+                    lex(view);
+                    actualLineNumber = analyzeLexed(actualLineNumber, ++pendingLines < MAX_CONTINUED_LINES);
+                    if (heldBackLine == -1) {
+                        lineStart = scanned + 1;
+                        pendingLines = 0;
+                    } else {
+                        // The unfinished statement is lexed again together with the next line
+                        lineStart += lexer.lineOffset(heldBackLine);
+                        pendingLines -= heldBackLine;
+                    }
+                }
+            }
+
+            // Hand out what this chunk produced before blocking on the next read
+            if (diagnostics instanceof Flushable) {
+                ((Flushable) diagnostics).flush();
+            }
 
-        // Check for unclosed parentheses
-        int openParentheses = 0;
-        for (char ch : input.toCharArray()) {
-            if (ch == '(') {
-                openParentheses++;
-            } else if (ch == ')') {
-                openParentheses--;
+            // Move the unfinished line to the front, growing the buffer only for very long lines
+            if (lineStart == 0 && filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                view = CharBuffer.wrap(buffer);
+            } else if (lineStart > 0) {
+                System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+                filled -= lineStart;
+                scanned -= lineStart;
+                lineStart = 0;
+                view.clear();
             }
         }
+    }
+
+    // The streaming analysis over UTF-8 bytes. Lines are lexed straight out of the byte buffer while they
+    // are ASCII, which most sources are, so no characters are decoded or copied; only a statement
+    // holding other bytes is decoded, into a reused buffer. Malformed bytes become U+FFFD, as in the
+    // mapped analysis.
+    private void analyzeStream(InputStream input) throws IOException {
+        byte[] buffer = new byte[8192];
+        ByteBuffer bytes = ByteBuffer.wrap(buffer);
+        ByteSequence view = new ByteSequence();
+        int filled = 0;
+        int scanned = 0;
+        int lineStart = 0;
+        int lastNonAscii = -1; // offset of the last byte scanned that is not ASCII
+        int pendingLines = 0;
+        int actualLineNumber = 1;
+
+        while (true) {
+            int read = input.read(buffer, filled, buffer.length - filled);
+            if (read == -1) {
+                if (lineStart < filled) {
+                    lex(lastNonAscii < lineStart ? view.set(bytes, lineStart, filled - lineStart) : decode(bytes, lineStart, filled));
+                    analyzeLexed(actualLineNumber, false);
+                }
+                return;
+            }
+            filled += read;
+
+            for (; scanned < filled; scanned++) {
+                byte b = buffer[scanned];
+                if (b < 0) {
+                    lastNonAscii = scanned;
+                } else if (b == '\n') {
+                    boolean ascii = lastNonAscii < lineStart;
+                    lex(ascii ? view.set(bytes, lineStart, scanned - lineStart) : decode(bytes, lineStart, scanned));
+                    actualLineNumber = analyzeLexed(actualLineNumber, ++pendingLines < MAX_CONTINUED_LINES);
+                    if (heldBackLine == -1) {
+                        lineStart = scanned + 1;
+                        pendingLines = 0;
+                    } else {
+                        // The unfinished statement is lexed again together with the next line; the
+                        // lexer's offsets are characters, the same as bytes only for ASCII
+                        lineStart = ascii ? lineStart + lexer.lineOffset(heldBackLine) : skipLines(buffer, lineStart, heldBackLine);
+                        pendingLines -= heldBackLine;
+                    }
+                }
+            }
+
+            // Hand out what this chunk produced before blocking on the next read
+            if (diagnostics instanceof Flushable) {
+                ((Flushable) diagnostics).flush();
+            }
 
-        // Reports if there are unclosed parentheses
-        if (openParentheses > 0) {
-            System.out.println("Line " + lineNumber + ": Invalid Syntax: Unclosed parenthesis.");
-            return; // Exit after reporting the error
+            // Move the unfinished line to the front, growing the buffer only for very long lines
+            if (lineStart == 0 && filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                bytes = ByteBuffer.wrap(buffer);
+            } else if (lineStart > 0) {
+                System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+                filled -= lineStart;
+                scanned -= lineStart;
+                lastNonAscii -= lineStart;
+                lineStart = 0;
+            }
         }
+    }
 
+    // The UTF-8 bytes [start, end) as characters, in a buffer reused until the next call
+    private CharBuffer decode(ByteBuffer bytes, int start, int end) {
+        if (utf8 == null) {
+            utf8 = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        // UTF-8 never decodes to more characters than it has bytes
+        if (decoded.capacity() < end - start) {
+            decoded = CharBuffer.allocate(Math.max(end - start, decoded.capacity() * 2));
+        }
+        decoded.clear();
+        utf8.reset();
+        bytes.limit(end).position(start);
+        utf8.decode(bytes, decoded, true);
+        utf8.flush(decoded);
+        bytes.clear();
+        return decoded.flip();
+    }
 
-        // Check for missing semicolon or double semicolon
-        if (!input.endsWith(";") || input.endsWith(";;")) {
-            System.out.println("Line " + lineNumber + ": Invalid Syntax: Missing semicolon or there's something after the semicolon");
-            return;
+    private static int skipLines(byte[] buffer, int offset, int lines) {
+        while (lines > 0) {
+            if (buffer[offset++] == '\n') {
+                lines--;
+            }
+        }
+        return offset;
+    }
+
+    // Memory-mapped analysis for very large files: the bytes [position, limit) of the file are mapped
+    // window by window and the whole lines of every window go through the parallel analysis. ASCII
+    // chunks are lexed directly over the mapping, only chunks holding other (UTF-8) bytes are decoded
+    // into a String first. Returns the line number to continue from; unless lastPart, the lines of a
+    // statement cut off at limit are left and resumePosition is where they start.
+    private int analyzeMapped(FileChannel channel, long position, long limit, int actualLineNumber, boolean lastPart) throws IOException {
+        long windowSize = MAP_WINDOW_SIZE;
+        while (position < limit) {
+            int length = (int) Math.min(windowSize, limit - position);
+            boolean lastWindow = position + length == limit;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            int end = length;
+            while (!(lastWindow && lastPart) && end > 0 && window.get(end - 1) != '\n') {
+                end--;
+            }
+            int resume = 0;
+            if (end > 0) {
+                actualLineNumber = analyzeParallel(ParallelLexer.Source.of(window, end), actualLineNumber, lastWindow && lastPart);
+                resume = resumeOffset;
+            }
+
+            if (lastWindow) {
+                // Unless this is the last part, what is left was cut off by the limit, for the next part
+                position += resume;
+                break;
+            } else if (resume == 0) {
+                // A single line or statement longer than the window, map a bigger one
+                if (windowSize >= Integer.MAX_VALUE) {
+                    throw new IOException("Line too long to map at offset " + position);
+                }
+                windowSize = Math.min(windowSize * 2, Integer.MAX_VALUE);
+            } else {
+                // Continue from the statement cut off by the end of the window
+                position += resume;
+            }
         }
+        resumePosition = position;
+        return actualLineNumber;
+    }
 
+    // Phase two of the parallel analysis: the chunks lexed concurrently are analyzed in order on this
+    // thread, resolving declarations and usages against the variables. A cut inside a statement is
+    // repaired here: the unfinished statement is lexed again with the next chunk, and so is a chunk
+    // closing braces opened in front of it. When parentheses, square brackets or a block comment are
+    // still open, the rest of the text is analyzed line by line. So is the rest
+    // from a chunk holding lines that the streaming analysis would stop reading ahead in. When the text
+    // is not the last part of the input, an unfinished statement at its end is left for the caller and
+    // resumeOffset is where it starts (the length of the text when everything was analyzed).
+    private int analyzeParallel(ParallelLexer.Source source, int actualLineNumber, boolean lastPart) {
+        ParallelLexer chunks = new ParallelLexer(source, Runtime.getRuntime().availableProcessors());
+        resumeOffset = source.length();
         try {
-            StringReader reader = new StringReader(input);
-            StreamTokenizer tokenizer = new StreamTokenizer(reader);
-            tokenizer.ordinaryChar('.');
-            tokenizer.ordinaryChar('-');
-            tokenizer.ordinaryChar('/');
-            tokenizer.wordChars('_', '_');
-            tokenizer.wordChars('$', '$');
-            tokenizer.quoteChar('"');
-            tokenizer.quoteChar('\'');
-            int token = tokenizer.nextToken();
-
-            // Analyze tokens
-            if (token == StreamTokenizer.TT_WORD) {
-                String firstWord = tokenizer.sval;
-                if (isPrimitiveType(firstWord) || firstWord.equals("String")) {
-                    handleVariableDeclaration(tokenizer, firstWord, lineNumber);
-                } else if (firstWord.equalsIgnoreCase("System")) {
-                    handlePrintStatement(tokenizer, lineNumber);
-                } else if (variables.containsKey(firstWord)) {
-                    handleVariableUsage(tokenizer, firstWord, lineNumber);
-                } else if (firstWord.equalsIgnoreCase("Scanner")) {
-                    handleScannerDeclaration(tokenizer, lineNumber);
+            int carry = -1;
+            for (ParallelLexer.Chunk chunk; (chunk = chunks.next()) != null; ) {
+                if (metrics != null) {
+                    // Few and long, every chunk is a sample
+                    metrics.record(AnalyzerMetrics.Stage.LEX, chunk.lexNanos);
+                }
+                if (carry != -1 || (chunk.outerBraces != braceCount && chunk.lexer.bracesClosedOutside() > 0)) {
+                    chunks.relex(chunk, carry != -1 ? carry : chunk.start, braceCount);
+                    carry = -1;
+                    if (metrics != null) {
+                        metrics.record(AnalyzerMetrics.Stage.LEX, chunk.lexNanos);
+                    }
+                }
+                lexer = chunk.lexer;
+                if (exceedsReadAhead()) {
+                    lexer = ownLexer;
+                    actualLineNumber = analyzeByLines(source, chunk.start, actualLineNumber, lastPart);
+                    break;
+                }
+                boolean end = chunk.end == source.length();
+                actualLineNumber = analyzeLexed(actualLineNumber, !(end && lastPart));
+                if (heldBackLine == -1) {
+                    continue;
+                }
+                int from = source.skipLines(chunk.start, heldBackLine);
+                if (lexer.openBrackets() == 0 && lexer.unterminatedComment() == -1) {
+                    carry = from;
+                    continue;
+                }
+
+                lexer = ownLexer;
+                actualLineNumber = analyzeByLines(source, from, actualLineNumber, lastPart);
+                break;
+            }
+            if (carry != -1) {
+                resumeOffset = carry;
+            }
+        } finally {
+            chunks.close();
+            lexer = ownLexer;
+        }
+        return actualLineNumber;
+    }
+
+    // The streaming analysis over the text from offset from on, for text already in memory: every line
+    // is lexed on its own, an unfinished statement again with the next line for at most
+    // MAX_CONTINUED_LINES lines. Sets resumeOffset like analyzeParallel.
+    private int analyzeByLines(ParallelLexer.Source source, int from, int actualLineNumber, boolean lastPart) {
+        int length = source.length();
+        int lineStart = from;
+        int pendingLines = 0;
+        resumeOffset = length;
+        for (int i = from; i < length; i++) {
+            if (source.charAt(i) == '\n') {
+                lex(source.slice(lineStart, i));
+                actualLineNumber = analyzeLexed(actualLineNumber, ++pendingLines < MAX_CONTINUED_LINES);
+                if (heldBackLine == -1) {
+                    lineStart = i + 1;
+                    pendingLines = 0;
                 } else {
-                    System.out.println("Line " + lineNumber + ": Invalid Syntax: undeclared variable: " + firstWord);
+                    lineStart = source.skipLines(lineStart, heldBackLine);
+                    pendingLines -= heldBackLine;
+                }
+            }
+        }
+        if (lineStart < length) {
+            lex(source.slice(lineStart, length));
+            actualLineNumber = analyzeLexed(actualLineNumber, !lastPart);
+            if (heldBackLine != -1) {
+                resumeOffset = source.skipLines(lineStart, heldBackLine);
+            }
+        }
+        return actualLineNumber;
+    }
+
+    // Whether the lexed text has lines that the streaming analysis would stop reading ahead in: a run of
+    // lines held together by statements, parentheses, square brackets or block comments going on over
+    // line ends, close to MAX_CONTINUED_LINES long. Analyzing such text line by line gives the streaming
+    // results. Braces do not count, the streaming analysis carries them along.
+    private boolean exceedsReadAhead() {
+        int lineCount = lexer.lineCount();
+        if (lineCount < MAX_CONTINUED_LINES - 2) {
+            return false;
+        }
+        // reach[line]: the last line something starting on the line goes on to
+        if (reach.length < lineCount) {
+            reach = new int[Math.max(lineCount, reach.length * 2)];
+        }
+        for (int line = 0; line < lineCount; line++) {
+            reach[line] = line;
+        }
+        for (int statement = 0, statements = lexer.statementCount(), first = 0; statement < statements; statement++) {
+            int end = lexer.statementEnd(statement);
+            extend(lexer.lineOf(first), lexer.lineOf(end - 1));
+            first = end;
+        }
+        for (int line = 0; line < lineCount; line++) {
+            for (int token = lexer.firstToken(line); token < lexer.endToken(line); token++) {
+                int partner = lexer.partner(token);
+                if (partner > token && lexer.kind(token) != '{') {
+                    extend(line, lexer.lineOf(partner));
+                }
+            }
+            for (int comment = lexer.firstComment(line); comment < lexer.endComment(line); comment++) {
+                extend(line, lexer.lineAt(lexer.commentEnd(comment) - 1));
+            }
+        }
+        if (lexer.openBrackets() > 0) {
+            extend(lexer.lineOf(lexer.firstOpenBracket()), lineCount - 1);
+        }
+
+        // Runs of lines covered by overlapping ranges; the streaming analysis may hold back one line more
+        for (int line = 0, start = 0, last = -1; line < lineCount; line++) {
+            if (line > last) {
+                start = line;
+            }
+            last = Math.max(last, reach[line]);
+            if (last - start + 2 >= MAX_CONTINUED_LINES) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void extend(int line, int to) {
+        if (reach[line] < to) {
+            reach[line] = to;
+        }
+    }
+
+    // Analyzes the statements held by the lexer and returns the line number to continue from.
+    // With holdBack the lines from the one an unfinished statement starts on are left for the caller
+    // to lex again with the lines that follow: heldBackLine is that lexer line (0 when nothing was
+    // analyzed), otherwise -1.
+    private int analyzeLexed(int actualLineNumber, boolean holdBack) {
+        int lineCount = lexer.lineCount();
+        if (lineNumbers.length < lineCount) {
+            lineNumbers = new int[Math.max(lineCount, lineNumbers.length * 2)];
+        }
+        for (int line = 0; line < lineCount; line++) {
+            lineNumbers[line] = actualLineNumber;
+            // Increment the line number if it's not a comment
+            if (lexer.firstToken(line) < lexer.endToken(line)) {
+                actualLineNumber++; // Increment only for actual code lines
+            }
+        }
+
+        heldBackLine = holdBack ? holdBackLine() : -1;
+        int held = heldBackLine == -1 ? lexer.tokenCount() : lexer.firstToken(heldBackLine);
+        if (metrics != null) {
+            metrics.lines(heldBackLine == -1 ? lineCount : heldBackLine);
+        }
+
+        int comment = 0;
+        int statements = lexer.statementCount();
+        for (int statement = 0, first = 0; statement < statements && first < held; statement++) {
+            int end = lexer.statementEnd(statement);
+            int line = lexer.lineOf(first);
+            // Output any comments found up to the end of the statement's last line first
+            comment = reportComments(comment, lexer.endComment(lexer.lineOf(end - 1)));
+            analyzeStatement(first, end, lineNumbers[line]);
+            first = end;
+        }
+        carryBraces(held);
+        if (heldBackLine != -1) {
+            reportComments(comment, lexer.firstComment(heldBackLine));
+            return lineNumbers[heldBackLine];
+        }
+        reportComments(comment, lexer.endComment(lineCount - 1));
+        if (lexer.unterminatedComment() != -1) {
+            reportAt(Diagnostic.Code.UNTERMINATED_COMMENT, lexer.commentStart(lexer.unterminatedComment()),
+                    "Invalid Syntax: Unterminated comment.");
+        }
+        return actualLineNumber;
+    }
+
+    // Takes the braces of the analyzed tokens before held into braceCount: the ones they closed are
+    // dropped, the ones they opened and left open are added
+    private void carryBraces(int held) {
+        braceCount -= lexer.outerBracesClosedBefore(held);
+        for (int token = 0; token < held; token++) {
+            if (lexer.kind(token) == '{' && lexer.braceOpenAt(token, held)) {
+                if (braceCount == braceLines.length) {
+                    braceLines = Arrays.copyOf(braceLines, braceCount * 2);
+                    braceColumns = Arrays.copyOf(braceColumns, braceCount * 2);
+                }
+                int line = lexer.lineOf(token);
+                braceLines[braceCount] = lineNumbers[line];
+                braceColumns[braceCount++] = lexer.start(token) - lexer.lineOffset(line) + 1;
+            }
+        }
+    }
+
+    // At the end of the input, the braces that were never closed
+    private void reportOpenBraces() {
+        for (int i = 0; i < braceCount; i++) {
+            emit(Diagnostic.Code.UNCLOSED_BRACKET, braceLines[i], braceColumns[i], "Invalid Syntax: Unclosed '{'.");
+        }
+        braceCount = 0;
+    }
+
+    // First line to lex again with the following text, or -1: the line starting the statement that
+    // holds the outermost parenthesis, square bracket or block comment still open, or else the unfinished
+    // last statement. It moves further back while a bracket in the held lines closes one opened before
+    // them; a brace closing one before them does not matter, the braces open there are carried along.
+    private int holdBackLine() {
+        int tokenCount = lexer.tokenCount();
+        int hold = tokenCount;
+        if (lexer.openBrackets() > 0) {
+            hold = lexer.firstOpenBracket();
+        }
+        if (tokenCount > 0 && lexer.kind(tokenCount - 1) != ';') {
+            hold = Math.min(hold, tokenCount - 1);
+        }
+        if (lexer.unterminatedComment() != -1) {
+            int line = lexer.lineAt(lexer.commentStart(lexer.unterminatedComment()));
+            if (lexer.firstToken(line) == tokenCount && hold == tokenCount) {
+                return line; // Nothing but the comment from that line on
+            }
+            hold = Math.min(hold, lexer.firstToken(line));
+        }
+        if (hold == tokenCount) {
+            return -1;
+        }
+
+        for (int earlier = hold; earlier != -1; ) {
+            hold = lexer.firstToken(lexer.lineOf(lexer.statementStart(earlier)));
+            earlier = -1;
+            for (int token = hold; token < tokenCount; token++) {
+                int partner = lexer.partner(token);
+                if (partner != -1 && partner < hold && lexer.kind(token) != '}' && (earlier == -1 || partner < earlier)) {
+                    earlier = partner;
                 }
+            }
+        }
+        return lexer.lineOf(hold);
+    }
+
+    private int reportComments(int from, int to) {
+        for (int comment = from; comment < to; comment++) {
+            reportAt(Diagnostic.Code.COMMENT, lexer.commentStart(comment), lexer.commentText(comment));
+        }
+        return to;
+    }
+
+    private void analyzeStatement(int first, int end, int lineNumber) {
+        timed = metrics != null && metrics.sample(AnalyzerMetrics.Stage.STRUCTURE);
+        if (!timed) {
+            if (checkStructure(first, end, lineNumber)) {
+                dispatch(first, end, lineNumber);
+            }
+            if (metrics != null) {
+                metrics.statement(variables.size());
+            }
+            return;
+        }
+        long started = System.nanoTime();
+        boolean valid = checkStructure(first, end, lineNumber);
+        long checked = System.nanoTime();
+        metrics.record(AnalyzerMetrics.Stage.STRUCTURE, checked - started);
+        if (valid) {
+            dispatch(first, end, lineNumber);
+            metrics.record(AnalyzerMetrics.Stage.HANDLER, System.nanoTime() - checked);
+        }
+        metrics.statement(variables.size());
+    }
+
+    // Reports the first structure problem of the statement, returns false if there is one
+    private boolean checkStructure(int first, int end, int lineNumber) {
+        // Brackets and literals were validated while lexing, report the first break in the structure
+        int problem = lexer.firstProblem(first, end);
+        if (problem != -1) {
+            reportStructure(problem, lineNumber);
+            return false; // Exit after reporting the error
+        }
+
+        // Check for missing semicolon or double semicolon
+        int last = end - 1;
+        if (lexer.kind(last) != ';'
+                || (last > first && lexer.kind(last - 1) == ';' && lexer.end(last - 1) == lexer.start(last))) {
+            report(Diagnostic.Code.MISSING_SEMICOLON, lineNumber, last, "Invalid Syntax: Missing semicolon or there's something after the semicolon");
+            return false;
+        }
+        return true;
+    }
+
+    private void dispatch(int first, int end, int lineNumber) {
+        lexer.select(first, end);
+        statementStart = first;
+        int token = lexer.nextToken();
+
+        // Analyze tokens, the first word is classified by the lexer and looked up without creating a String
+        int slot;
+        if (token == Lexer.TT_WORD) {
+            Keyword keyword = lexer.keyword(first);
+            if (keyword.type != SymbolTable.UNKNOWN) {
+                handleVariableDeclaration(lexer, keyword, lineNumber);
+            } else if (keyword == Keyword.SYSTEM || lexer.wordEqualsIgnoreCase(first, "System")) {
+                handlePrintStatement(lexer, lineNumber);
+            } else if ((slot = variables.find(lexer.input(), lexer.start(first), lexer.end(first))) >= 0) {
+                handleVariableUsage(lexer, slot, lineNumber);
+            } else if (keyword == Keyword.SCANNER || lexer.wordEqualsIgnoreCase(first, "Scanner")) {
+                handleScannerDeclaration(lexer, lineNumber);
             } else {
-                System.out.println("Line " + lineNumber + ": Invalid Syntax: Line does not start with a valid token");
+                report(Diagnostic.Code.UNDECLARED_VARIABLE, lineNumber, "Invalid Syntax: undeclared variable: " + lexer.sval());
             }
-        } catch (IOException e) {
-            System.out.println("Line " + lineNumber + ": Error: " + e.getMessage());
+        } else if (isIncrement(lexer, first)) {
+            handlePrefixIncrement(lexer, lineNumber);
+        } else {
+            report(Diagnostic.Code.INVALID_START, lineNumber, "Invalid Syntax: Line does not start with a valid token");
         }
     }
 
@@ -143,13 +1217,29 @@ public class SyntaxAnalyzer {
 
 
 
-    private static boolean isPrimitiveType(String word) {
-        return word.equals("byte") || word.equals("short") || word.equals("int") || word.equals("long") ||
-                word.equals("float") || word.equals("double") || word.equals("char") || word.equals("boolean");
+    private void reportStructure(int token, int lineNumber) {
+        int kind = lexer.kind(token);
+        switch (kind) {
+            case '(':
+                report(Diagnostic.Code.UNCLOSED_PARENTHESIS, lineNumber, token, "Invalid Syntax: Unclosed parenthesis.");
+                break;
+            case '[':
+            case '{':
+                report(Diagnostic.Code.UNCLOSED_BRACKET, lineNumber, token, "Invalid Syntax: Unclosed '" + (char) kind + "'.");
+                break;
+            case '"':
+                report(Diagnostic.Code.UNTERMINATED_LITERAL, lineNumber, token, "Invalid Syntax: Unterminated string literal.");
+                break;
+            case '\'':
+                report(Diagnostic.Code.UNTERMINATED_LITERAL, lineNumber, token, "Invalid Syntax: Unterminated char literal.");
+                break;
+            default:
+                report(Diagnostic.Code.UNMATCHED_BRACKET, lineNumber, token, "Invalid Syntax: Unmatched '" + (char) kind + "'.");
+        }
     }
 
     private static boolean isValidVariableName(String varName) {
-        if (RESERVED_WORDS.contains(varName)) {
+        if (Keyword.of(varName).reserved) {
             return false;
         }
         if (!Character.isLetter(varName.charAt(0)) && varName.charAt(0) != '$' && varName.charAt(0) != '_') {
@@ -164,385 +1254,292 @@ public class SyntaxAnalyzer {
         return true;
     }
 
-    private static void handleVariableDeclaration(StreamTokenizer tokenizer, String varType, int lineNumber) throws IOException {
+    private void handleVariableDeclaration(Lexer tokenizer, Keyword typeKeyword, int lineNumber) {
+        String varType = typeKeyword.text;
         int token = tokenizer.nextToken();
-        if (token == StreamTokenizer.TT_WORD) {
-            String varName = tokenizer.sval;
-            if (!isValidVariableName(varName)) {
-                System.out.println("Line " + lineNumber + ": Invalid Syntax: invalid variable name: " + varName);
+        if (token == Lexer.TT_WORD) {
+            // A word token always has the shape of an identifier, only reserved words are left to reject
+            String varName = tokenizer.sval();
+            if (tokenizer.keyword(tokenizer.current()).reserved) {
+                report(Diagnostic.Code.INVALID_VARIABLE_NAME, lineNumber, "Invalid Syntax: invalid variable name: " + varName);
                 return;
             }
 
             token = tokenizer.nextToken();
             if (token == '=') {
-                tokenizer.nextToken();
-                Object value = parseValue(tokenizer, varType);
-                if (value == null) {
-                    System.out.println("Line " + lineNumber + ": Invalid Syntax, mismatched data type for " + varType + " " + varName);
-                    return;
+                byte type = typeKeyword.type;
+                int value = evaluateValue(tokenizer, type, lineNumber);
+                if (value == VALUE_MISMATCH) {
+                    report(Diagnostic.Code.TYPE_MISMATCH, lineNumber, "Invalid Syntax, mismatched data type for " + varType + " " + varName);
                 }
-
-                // Check for semicolon after the value
-                token = tokenizer.nextToken();
-                if (token == ';') {
-                    // Check for any unexpected tokens after the semicolon
-                    token = tokenizer.nextToken();
-                    if (token != StreamTokenizer.TT_EOL && token != StreamTokenizer.TT_EOF) {
-                        System.out.println("Line " + lineNumber + ": Invalid Syntax: Unexpected token after ';'.");
-                        return;
-                    }
-                    // Now safe to declare syntax valid after confirming no extra tokens
-                    variables.put(varName, value);
-                    System.out.println("Line " + lineNumber + ": Syntax is Valid, " + varType + " " + varName + " = " + value);
-                } else {
-                    System.out.println("Line " + lineNumber + ": Invalid Syntax : Expected ';' after value.");
+                if (value != VALUE_VALID || !endOfStatement(tokenizer, lineNumber, "Invalid Syntax : Expected ';' after value.")) {
+                    return;
                 }
-
+                // Now safe to declare syntax valid after confirming no extra tokens
+                int slot = variables.declare(varName, type, expression.value, expression.string);
+                report(Diagnostic.Code.VALID_DECLARATION, lineNumber, statementStart, "Syntax is Valid, " + varType + " " + varName + " = " + variables.format(slot));
             } else {
-                System.out.println("Line " + lineNumber + ": Invalid Syntax: Expected '=' after variable name.");
+                report(Diagnostic.Code.EXPECTED_ASSIGNMENT, lineNumber, "Invalid Syntax: Expected '=' after variable name.");
             }
         } else {
-            System.out.println("Line " + lineNumber + ": Invalid Syntax: Expected variable name.");
+            report(Diagnostic.Code.EXPECTED_VARIABLE_NAME, lineNumber, "Invalid Syntax: Expected variable name.");
         }
     }
 
+    // Evaluates the expression starting at token from, the cursor is left on the token after it
+    private boolean evaluate(Lexer tokenizer, int from) {
+        long started = timed ? System.nanoTime() : 0;
+        boolean valid = expression.evaluate(tokenizer, from, tokenizer.limit(), variables);
+        if (timed) {
+            metrics.record(AnalyzerMetrics.Stage.EXPRESSION, System.nanoTime() - started);
+        }
+        tokenizer.select(expression.position(), tokenizer.limit());
+        return valid;
+    }
 
-    private static Object parseValue(StreamTokenizer tokenizer, String varType) throws IOException {
-        switch (varType) {
-            case "byte":
-            case "short":
-            case "int":
-                if (tokenizer.ttype == StreamTokenizer.TT_NUMBER && tokenizer.nval == (int) tokenizer.nval) {
-                    return (int) tokenizer.nval;
-                } else {
-                    System.out.println("Invalid value for int or related types.");
-                    return null;
-                }
-            case "long":
-            case "float":
-            case "double":
-                if (tokenizer.ttype == StreamTokenizer.TT_NUMBER) {
-                    return tokenizer.nval;
-                }
-                break;
-            case "boolean":
-                if (tokenizer.ttype == StreamTokenizer.TT_WORD) {
-                    if (tokenizer.sval.equals("true") || tokenizer.sval.equals("false")) {
-                        return Boolean.parseBoolean(tokenizer.sval);
-                    }
-                }
-                break;
-            case "char":
-                if (tokenizer.ttype == '\'' && tokenizer.sval.length() == 1) {
-                    return tokenizer.sval.charAt(0);
-                } else {
-                    System.out.println("Invalid char value.");
-                    return null;
-                }
-            case "String":
-                if (tokenizer.ttype == '"') {
-                    return tokenizer.sval;
-                } else {
-                    System.out.println("Invalid String value: Missing double quotes.");
-                    return null;
-                }
+    private void reportExpressionError(int lineNumber) {
+        report(expression.errorCode, lineNumber, expression.errorToken, expression.errorMessage);
+    }
+
+    // Evaluates the value after the '=' of a declaration or assignment as a value of the given type, into
+    // the expression. An error inside the expression is reported here; when the value is no expression
+    // at all or does not fit the type, the caller reports the mismatch after the value problem.
+    private int evaluateValue(Lexer tokenizer, byte type, int lineNumber) {
+        int valueStart = tokenizer.position();
+        if (evaluate(tokenizer, valueStart) && expression.assignTo(type)) {
+            return VALUE_VALID;
+        }
+        if (expression.errorCode != null
+                && (expression.errorCode != Diagnostic.Code.INVALID_EXPRESSION || expression.errorToken != valueStart)) {
+            reportExpressionError(lineNumber);
+            return VALUE_INVALID;
+        }
+        int token = valueStart < tokenizer.limit() ? valueStart : -1;
+        if (SymbolTable.isIntegral(type)) {
+            report(Diagnostic.Code.INVALID_VALUE, lineNumber, token, "Invalid value for int or related types.");
+        } else if (type == SymbolTable.CHAR) {
+            report(Diagnostic.Code.INVALID_VALUE, lineNumber, token, "Invalid char value.");
+        } else if (type == SymbolTable.STRING) {
+            report(Diagnostic.Code.INVALID_VALUE, lineNumber, token, "Invalid String value: Missing double quotes.");
         }
-        return null;
+        return VALUE_MISMATCH;
+    }
+
+    // Checks that the statement ends after the value with a ';' and nothing behind it
+    private boolean endOfStatement(Lexer tokenizer, int lineNumber, String expectedSemicolon) {
+        if (tokenizer.nextToken() != ';') {
+            report(Diagnostic.Code.EXPECTED_SEMICOLON, lineNumber, expectedSemicolon);
+            return false;
+        }
+        if (tokenizer.nextToken() != Lexer.TT_EOF) {
+            report(Diagnostic.Code.UNEXPECTED_TOKEN, lineNumber, "Invalid Syntax: Unexpected token after ';'.");
+            return false;
+        }
+        return true;
     }
 
-    private static void handlePrintStatement(StreamTokenizer tokenizer, int lineNumber) throws IOException {
+    private void handlePrintStatement(Lexer tokenizer, int lineNumber) {
         int token = tokenizer.nextToken();
         if (token != '.') {
-            System.out.println("Line " + lineNumber + ": Invalid Syntax: Expected '.' after 'System'");
+            report(Diagnostic.Code.INVALID_PRINT, lineNumber, "Invalid Syntax: Expected '.' after 'System'");
             return;
         }
 
         token = tokenizer.nextToken();
-        if (token != StreamTokenizer.TT_WORD || (!tokenizer.sval.equals("out") && !tokenizer.sval.equals("err"))) {
-            System.out.println("Line " + lineNumber + ": Invalid Syntax: Expected 'out' or 'err' after 'System.'");
+        Keyword stream = token == Lexer.TT_WORD ? tokenizer.keyword(tokenizer.current()) : Keyword.NONE;
+        if (stream != Keyword.OUT && stream != Keyword.ERR) {
+            report(Diagnostic.Code.INVALID_PRINT, lineNumber, "Invalid Syntax: Expected 'out' or 'err' after 'System.'");
             return;
         }
 
-        String outputStream = tokenizer.sval;
+        String outputStream = stream.text;
 
         token = tokenizer.nextToken();
         if (token != '.') {
-            System.out.println("Line " + lineNumber + ": Invalid Syntax: Expected '.' after 'System." + outputStream + "'");
+            report(Diagnostic.Code.INVALID_PRINT, lineNumber, "Invalid Syntax: Expected '.' after 'System." + outputStream + "'");
             return;
         }
 
         token = tokenizer.nextToken();
-        if (token != StreamTokenizer.TT_WORD ||
-                (!tokenizer.sval.equals("print") && !tokenizer.sval.equals("println") && !tokenizer.sval.equals("printf"))) {
-            System.out.println("Line " + lineNumber + ": Invalid Syntax: print statement: " + tokenizer.sval);
+        Keyword method = token == Lexer.TT_WORD ? tokenizer.keyword(tokenizer.current()) : Keyword.NONE;
+        if (method != Keyword.PRINT && method != Keyword.PRINTLN && method != Keyword.PRINTF) {
+            report(Diagnostic.Code.INVALID_PRINT, lineNumber, "Invalid Syntax: print statement: " + tokenizer.sval());
             return;
         }
 
-        String printType = tokenizer.sval;
+        String printType = method.text;
 
         token = tokenizer.nextToken();
         if (token != '(') {
-            System.out.println("Line " + lineNumber + ": Invalid Syntax: Expected '(' before '" + printType + "'");
+            report(Diagnostic.Code.INVALID_PRINT, lineNumber, "Invalid Syntax: Expected '(' before '" + printType + "'");
             return;
         }
 
-        StringBuilder expression = new StringBuilder();
-        boolean insideString = false;
-        int parenCount = 1;
-
-        while ((token = tokenizer.nextToken()) != StreamTokenizer.TT_EOF) {
-            switch (token) {
-                case '"':
-                    insideString = !insideString;
-                    if (!insideString) {
-                        expression.append('"');
-                    } else {
-                        expression.append('"').append(tokenizer.sval).append('"');
-                    }
-                    break;
-                case '\'':
-                    // Check for valid character literal (single character within single quotes)
-                    if (tokenizer.sval.length() == 1) {
-                        expression.append('\'').append(tokenizer.sval).append('\'');
-                    } else {
-                        System.out.println("Line " + lineNumber + ": Invalid char literal: Char literals can only be one character.");
-                        return;
-                    }
-                    break;
-                case StreamTokenizer.TT_NUMBER:
-                    expression.append(tokenizer.nval);
-                    break;
-                case StreamTokenizer.TT_WORD:
-                    if (tokenizer.sval.equals("true") || tokenizer.sval.equals("false") || tokenizer.sval.equals("null")) {
-                        expression.append(tokenizer.sval);
-                    } else if (variables.containsKey(tokenizer.sval)) {
-                        expression.append(variables.get(tokenizer.sval));
-                    } else {
-                        System.out.println("Line " + lineNumber + ": Invalid Syntax: variable or undeclared identifier: " + tokenizer.sval);
-                        return;
-                    }
-                    break;
-                case '(':
-                    parenCount++;
-                    expression.append('(');
-                    break;
-                case ')':
-                    parenCount--;
-                    if (parenCount == 0) {
-                        String result = evaluateExpression(expression.toString());
-                        System.out.println("Line " + lineNumber + ": Syntax is Valid, System." + outputStream + "." + printType + " statement, Output: " + result);
-                        return;
-                    }
-                    expression.append(')');
-                    break;
-                case ';':
-                    // Check for unexpected tokens after the semicolon
-                    token = tokenizer.nextToken();
-                    if (token != StreamTokenizer.TT_EOF) {
-                        System.out.println("Line " + lineNumber + ": Invalid Syntax: Unexpected token after ';'.");
-                        return;
-                    }
-                    // If no unexpected tokens, break out of the loop
-                    return;
-
-                default:
-                    expression.append((char) token);
-                    break;
-            }
-        }
-
-        if (parenCount != 0) {
-            System.out.println("Line " + lineNumber + ": Invalid print statement: Unmatched parentheses");
+        // The parenthesis closing the argument list was matched by the lexer
+        int argumentStart = tokenizer.position();
+        int argumentEnd = tokenizer.partner(tokenizer.current());
+        if (argumentEnd == -1 || argumentEnd >= tokenizer.limit()) {
+            report(Diagnostic.Code.INVALID_PRINT, lineNumber, "Invalid print statement: Unmatched parentheses");
+            return;
         }
-    }
 
-
-    private static String evaluateExpression(String expression) {
-        // Handle string concatenation
-        if (expression.contains("+") && expression.contains("\"")) {
-            String[] parts = expression.split("\\+");
-            StringBuilder result = new StringBuilder();
-            for (String part : parts) {
-                part = part.trim();
-                if (part.startsWith("\"") && part.endsWith("\"")) {
-                    result.append(part.substring(1, part.length() - 1));
-                } else {
-                    result.append(evaluateExpression(part));
-                }
+        String output = "";
+        if (argumentStart < argumentEnd) {
+            long started = timed ? System.nanoTime() : 0;
+            boolean valid = expression.evaluateAll(tokenizer, argumentStart, argumentEnd, variables);
+            if (timed) {
+                metrics.record(AnalyzerMetrics.Stage.EXPRESSION, System.nanoTime() - started);
             }
-            return result.toString();
+            if (!valid) {
+                reportExpressionError(lineNumber);
+                return;
+            }
+            output = expression.format();
         }
+        report(Diagnostic.Code.VALID_PRINT, lineNumber, statementStart, "Syntax is Valid, System." + outputStream + "." + printType + " statement, Output: " + output);
+    }
 
-        // Handle boolean values
-        if (expression.equals("true") || expression.equals("false")) {
-            return expression;
-        }
 
-        // Handle character literals
-        if (expression.startsWith("'") && expression.endsWith("'") && expression.length() == 3) {
-            return expression.substring(1, 2);
+    // Scanner <name> = new Scanner(System.in);
+    private void handleScannerDeclaration(Lexer tokenizer, int lineNumber) {
+        int token = tokenizer.nextToken(); // variable name
+        if (token != Lexer.TT_WORD || !isValidVariableName(tokenizer.sval())) {
+            String varName = token == Lexer.TT_EOF ? "" : tokenizer.source(tokenizer.current(), tokenizer.current() + 1);
+            report(Diagnostic.Code.INVALID_VARIABLE_NAME, lineNumber, "Invalid Scanner variable name: " + varName);
+            return;
         }
-
-        // If it's not a boolean or character, try to evaluate as a math expression
-        try {
-            double result = evaluateMathExpression(expression);
-            if (result == (int) result) {
-                return String.valueOf((int) result);  // Return as integer if it's a whole number
-            } else {
-                return String.valueOf(result);  // Return as double with full precision
+        String varName = tokenizer.sval();
+
+        if (tokenizer.nextToken() == '='
+                && nextWord(tokenizer, "new") && nextWord(tokenizer, "Scanner")
+                && tokenizer.nextToken() == '('
+                && nextWord(tokenizer, "System") && tokenizer.nextToken() == '.' && nextWord(tokenizer, "in")
+                && tokenizer.nextToken() == ')'
+                && tokenizer.nextToken() == ';') {
+            if (tokenizer.nextToken() != Lexer.TT_EOF) {
+                report(Diagnostic.Code.UNEXPECTED_TOKEN, lineNumber, "Invalid Syntax: Unexpected token after ';'.");
+                return;
             }
-        } catch (Exception e) {
-            // If it's not a valid math expression, return as is (likely a string)
-            return expression.replaceAll("\"", ""); // Remove quotes from string literals
+            report(Diagnostic.Code.VALID_SCANNER, lineNumber, statementStart, "Syntax is Valid, Scanner declared - " + varName);
+        } else {
+            report(Diagnostic.Code.INVALID_SCANNER, lineNumber, "Invalid Scanner declaration");
         }
     }
 
-    private static double evaluateMathExpression(String expression) {
-        return new Object() {
-            int pos = -1, ch;
-
-            void nextChar() {
-                ch = (++pos < expression.length()) ? expression.charAt(pos) : -1;
-            }
-
-            boolean eat(int charToEat) {
-                while (ch == ' ') nextChar();
-                if (ch == charToEat) {
-                    nextChar();
-                    return true;
-                }
-                return false;
-            }
-
-            double parse() {
-                nextChar();
-                double x = parseExpression();
-                if (pos < expression.length()) throw new RuntimeException("Unexpected: " + (char)ch);
-                return x;
-            }
-
-            double parseExpression() {
-                double x = parseTerm();
-                for (;;) {
-                    if (eat('+')) x += parseTerm();
-                    else if (eat('-')) x -= parseTerm();
-                    else return x;
-                }
-            }
-
-            double parseTerm() {
-                double x = parseFactor();
-                for (;;) {
-                    if (eat('*')) x *= parseFactor();
-                    else if (eat('/')) {
-                        double y = parseFactor();
-                        if (y == 0) throw new ArithmeticException("Division by zero");
-                        x /= y;
-                    }
-                    else return x;
-                }
-            }
-
-            double parseFactor() {
-                if (eat('+')) return +parseFactor();
-                if (eat('-')) return -parseFactor();
+    // Whether the next token is the word, compared ignoring case like the statement keywords
+    private static boolean nextWord(Lexer tokenizer, String word) {
+        tokenizer.nextToken();
+        return tokenizer.current() != -1 && tokenizer.wordEqualsIgnoreCase(tokenizer.current(), word);
+    }
 
-                double x;
-                int startPos = this.pos;
-                if (eat('(')) {
-                    x = parseExpression();
-                    if (!eat(')')) throw new RuntimeException("Missing ')'");
-                } else if ((ch >= '0' && ch <= '9') || ch == '.') {
-                    while ((ch >= '0' && ch <= '9') || ch == '.') nextChar();
-                    x = Double.parseDouble(expression.substring(startPos, this.pos));
-                } else {
-                    throw new RuntimeException("Unexpected: " + (char)ch);
-                }
+    // The operator of a compound assignment such as +=, starting at token, or -1
+    private static int compoundOperator(Lexer tokenizer, int token) {
+        int kind = tokenizer.kind(token);
+        if ((kind == '+' || kind == '-' || kind == '*' || kind == '/' || kind == '%') && token + 1 < tokenizer.limit()
+                && tokenizer.kind(token + 1) == '=' && tokenizer.end(token) == tokenizer.start(token + 1)) {
+            return kind;
+        }
+        return -1;
+    }
 
-                return x;
-            }
-        }.parse();
+    // Whether ++ or -- starts at token
+    private static boolean isIncrement(Lexer tokenizer, int token) {
+        int kind = tokenizer.kind(token);
+        return (kind == '+' || kind == '-') && token + 1 < tokenizer.limit()
+                && tokenizer.kind(token + 1) == kind && tokenizer.end(token) == tokenizer.start(token + 1);
     }
 
-    private static void handleScannerDeclaration(StreamTokenizer tokenizer, int lineNumber) throws IOException {
-        tokenizer.nextToken(); // variable name
-        String varName = tokenizer.sval;
-        if (!isValidVariableName(varName)) {
-            System.out.println("Line " + lineNumber + ": Invalid Scanner variable name: " + varName);
+    // ++x; or --x;
+    private void handlePrefixIncrement(Lexer tokenizer, int lineNumber) {
+        int operatorToken = tokenizer.current();
+        tokenizer.nextToken();
+        if (tokenizer.nextToken() != Lexer.TT_WORD) {
+            report(Diagnostic.Code.EXPECTED_VARIABLE_NAME, lineNumber, "Invalid Syntax: Expected variable name.");
             return;
         }
-        tokenizer.nextToken(); // =
-        tokenizer.nextToken(); // new
-        tokenizer.nextToken(); // Scanner
-        tokenizer.nextToken(); // (
-        tokenizer.nextToken(); // System
-        tokenizer.nextToken(); // .
-        tokenizer.nextToken(); // in
-        tokenizer.nextToken(); // )
-        tokenizer.nextToken(); // ;
-
-        if (tokenizer.ttype == ';') {
-            System.out.println("Line " + lineNumber + ": Syntax is Valid, Scanner declared - " + varName);
-        } else {
-            System.out.println("Line " + lineNumber + ": Invalid Scanner declaration");
+        int name = tokenizer.current();
+        int slot = variables.find(tokenizer.input(), tokenizer.start(name), tokenizer.end(name));
+        if (slot < 0) {
+            report(Diagnostic.Code.UNDECLARED_VARIABLE, lineNumber, "Invalid Syntax: undeclared variable: " + tokenizer.sval());
+            return;
         }
+        handleIncrement(tokenizer, slot, operatorToken, lineNumber);
     }
 
+    // x++, x--, ++x or --x with the cursor after it
+    private void handleIncrement(Lexer tokenizer, int slot, int operatorToken, int lineNumber) {
+        String varName = variables.name(slot);
+        int operator = tokenizer.kind(operatorToken);
+        if (!Expression.isNumeric(variables.type(slot))) {
+            report(Diagnostic.Code.INVALID_EXPRESSION, lineNumber, operatorToken, "Invalid expression: bad operand type for '"
+                    + (char) operator + (char) operator + "': " + SymbolTable.typeName(variables.type(slot)));
+            return;
+        }
+        expression.setInt(1);
+        if (!expression.combine(operator, operatorToken, variables, slot)) {
+            reportExpressionError(lineNumber);
+            return;
+        }
+        if (!endOfStatement(tokenizer, lineNumber, "Invalid Syntax: Expected ';' after value.")) {
+            return;
+        }
+        variables.assign(slot, expression.value, expression.string);
+        report(Diagnostic.Code.VALID_ASSIGNMENT, lineNumber, statementStart, "Syntax is Valid, " + varName + " = " + variables.format(slot));
+    }
 
-    private static void handleVariableUsage(StreamTokenizer tokenizer, String varName, int lineNumber) throws IOException {
-        int nextToken = tokenizer.nextToken();
-        if (nextToken == '=') {
+    private void handleVariableUsage(Lexer tokenizer, int slot, int lineNumber) {
+        String varName = variables.name(slot);
+        int position = tokenizer.position();
+        int operator = position < tokenizer.limit() ? compoundOperator(tokenizer, position) : -1;
+        if (position < tokenizer.limit() && isIncrement(tokenizer, position)) {
+            tokenizer.nextToken();
+            tokenizer.nextToken();
+            handleIncrement(tokenizer, slot, position, lineNumber);
+            return;
+        }
+        if (operator != -1) {
+            // x op= value is x = (type) (x op value)
             tokenizer.nextToken();
-            Object value = parseValue(tokenizer, getType(variables.get(varName)));
-            if (value == null) {
-                System.out.println("Line " + lineNumber + ": Invalid value assignment for " + varName);
+            tokenizer.nextToken();
+            if (!evaluate(tokenizer, tokenizer.position()) || !expression.combine(operator, position, variables, slot)) {
+                reportExpressionError(lineNumber);
+                return;
+            }
+            if (!endOfStatement(tokenizer, lineNumber, "Invalid Syntax: Expected ';' after value.")) {
                 return;
             }
+            variables.assign(slot, expression.value, expression.string);
+            report(Diagnostic.Code.VALID_ASSIGNMENT, lineNumber, statementStart, "Syntax is Valid, " + varName + " = " + variables.format(slot));
+            return;
+        }
 
-            // Check for semicolon after the value
-            nextToken = tokenizer.nextToken();
-            if (nextToken == ';') {
-                // Check for any unexpected tokens after the semicolon
-                nextToken = tokenizer.nextToken();
-                if (nextToken != StreamTokenizer.TT_EOL && nextToken != StreamTokenizer.TT_EOF) {
-                    System.out.println("Line " + lineNumber + ": Invalid Syntax: Unexpected token after ';'.");
-                    return;
-                }
-                // Now safe to declare syntax valid after confirming no extra tokens
-                variables.put(varName, value);
-                System.out.println("Line " + lineNumber + ": Syntax is Valid, " + varName + " = " + value);
-            } else {
-                System.out.println("Line " + lineNumber + ": Invalid Syntax: Expected ';' after value.");
+        int nextToken = tokenizer.nextToken();
+        if (nextToken == '=') {
+            // The declared type is kept in the symbol table, so byte/short/long/float stay what they are
+            int value = evaluateValue(tokenizer, variables.type(slot), lineNumber);
+            if (value == VALUE_MISMATCH) {
+                report(Diagnostic.Code.TYPE_MISMATCH, lineNumber, "Invalid value assignment for " + varName);
+            }
+            if (value != VALUE_VALID || !endOfStatement(tokenizer, lineNumber, "Invalid Syntax: Expected ';' after value.")) {
+                return;
             }
+            // Now safe to declare syntax valid after confirming no extra tokens
+            variables.assign(slot, expression.value, expression.string);
+            report(Diagnostic.Code.VALID_ASSIGNMENT, lineNumber, statementStart, "Syntax is Valid, " + varName + " = " + variables.format(slot));
 
         } else {
-            System.out.println("Line " + lineNumber + ": Syntax is Valid, Variable used: " + varName + " = " + variables.get(varName));
+            report(Diagnostic.Code.VALID_USAGE, lineNumber, statementStart, "Syntax is Valid, Variable used: " + varName + " = " + variables.format(slot));
 
             // Check for semicolon after the usage
-            nextToken = tokenizer.nextToken();
             if (nextToken == ';') {
                 // Check for any unexpected tokens after the semicolon
                 nextToken = tokenizer.nextToken();
-                if (nextToken != StreamTokenizer.TT_EOL && nextToken != StreamTokenizer.TT_EOF) {
-                    System.out.println("Line " + lineNumber + ": Invalid Syntax: Unexpected token after ';'.");
+                if (nextToken != Lexer.TT_EOF) {
+                    report(Diagnostic.Code.UNEXPECTED_TOKEN, lineNumber, "Invalid Syntax: Unexpected token after ';'.");
                 }
             } else {
-                System.out.println("Line " + lineNumber + ": Invalid Syntax: Expected ';' after variable usage.");
+                report(Diagnostic.Code.EXPECTED_SEMICOLON, lineNumber, "Invalid Syntax: Expected ';' after variable usage.");
             }
         }
     }
-
-
-    private static String getType(Object value) {
-        if (value instanceof Byte) return "byte";
-        if (value instanceof Short) return "short";
-        if (value instanceof Integer) return "int";
-        if (value instanceof Long) return "long";
-        if (value instanceof Float) return "float";
-        if (value instanceof Double) return "double";
-        if (value instanceof Boolean) return "boolean";
-        if (value instanceof Character) return "char";
-        if (value instanceof String) return "String";
-        return "unknown";
-    }
-}
\ No newline at end of file
+}
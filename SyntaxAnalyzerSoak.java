@@ -0,0 +1,326 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+// Throughput and soak test of analyzeBlock over a large generated corpus (see CorpusGenerator): the
+// corpus is analyzed over and over for the given duration by one or more threads, each with its own
+// analyzer. Every interval it reports lines/s, per-line latency percentiles, GC pauses and the heap
+// left after collections; the summary compares the first and the last interval, where a falling
+// throughput or a growing live heap shows up over a long run.
+// Per-line latency is the time between two consecutive diagnostics: nearly every line produces one,
+// and taking the time there adds one clock read per line. --scaling analyzes 1/8, 1/4, 1/2 and all
+// of the corpus instead, so time per line growing with the input size is seen directly.
+// Usage: java SyntaxAnalyzerSoak [--lines=N] [--seed=S] [--error-rate=R] [--duration=seconds]
+//                                [--interval=seconds] [--threads=N] [--scaling]
+public class SyntaxAnalyzerSoak {
+
+    // Latencies in nanoseconds, in buckets of 1/16 of a power of two above 16, so percentiles are
+    // within about 6% of the real value
+    static final class Histogram {
+        private static final int SUB_BUCKETS = 16;
+        private final long[] counts = new long[SUB_BUCKETS + 60 * SUB_BUCKETS];
+        private long total;
+
+        void record(long nanos) {
+            counts[index(Math.max(0, nanos))]++;
+            total++;
+        }
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 4)) - SUB_BUCKETS;
+            return SUB_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+        }
+
+        // Largest value that falls into the bucket
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + 4;
+            int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 4)) - 1;
+        }
+
+        long percentile(double fraction) {
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > 0 && seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+        }
+
+        void clear() {
+            Arrays.fill(counts, 0);
+            total = 0;
+        }
+    }
+
+    // Takes the time at every diagnostic; used by one thread
+    static final class LatencySink implements DiagnosticSink {
+        final Histogram latencies = new Histogram();
+        private long last;
+
+        void start() {
+            last = System.nanoTime();
+        }
+
+        @Override
+        public void report(Diagnostic.Code code, int line, int column, String message) {
+            long now = System.nanoTime();
+            latencies.record(now - last);
+            last = now;
+        }
+    }
+
+    // Collector pauses as the collectors report them; concurrent cycles are not pauses
+    static final class GcWatch {
+        private long count;
+        private long pauseMillis;
+        private long maxPauseMillis;
+        private long heapAfterGc = -1;
+
+        GcWatch() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                        if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                            collected(GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()));
+                        }
+                    }, null, null);
+                }
+            }
+        }
+
+        private synchronized void collected(GarbageCollectionNotificationInfo info) {
+            if (info.getGcAction().contains("concurrent")) {
+                return;
+            }
+            long duration = info.getGcInfo().getDuration();
+            count++;
+            pauseMillis += duration;
+            maxPauseMillis = Math.max(maxPauseMillis, duration);
+            long used = 0;
+            for (MemoryUsage usage : info.getGcInfo().getMemoryUsageAfterGc().values()) {
+                used += usage.getUsed();
+            }
+            heapAfterGc = used;
+        }
+
+        // Counts since the last call, and the heap after the last collection (-1 before the first)
+        synchronized long[] takeInterval() {
+            long[] interval = {count, pauseMillis, maxPauseMillis, heapAfterGc};
+            count = 0;
+            pauseMillis = 0;
+            maxPauseMillis = 0;
+            return interval;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long lines = 1_000_000;
+        long seed = 42;
+        double errorRate = 0.05;
+        long durationSeconds = 60;
+        long intervalSeconds = 10;
+        int threads = 1;
+        boolean scaling = false;
+
+        for (String arg : args) {
+            try {
+                if (arg.startsWith("--lines=")) {
+                    lines = Long.parseLong(arg.substring("--lines=".length()));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(arg.substring("--seed=".length()));
+                } else if (arg.startsWith("--error-rate=")) {
+                    errorRate = Double.parseDouble(arg.substring("--error-rate=".length()));
+                } else if (arg.startsWith("--duration=")) {
+                    durationSeconds = Long.parseLong(arg.substring("--duration=".length()));
+                } else if (arg.startsWith("--interval=")) {
+                    intervalSeconds = Math.max(1, Long.parseLong(arg.substring("--interval=".length())));
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Math.max(1, Integer.parseInt(arg.substring("--threads=".length())));
+                } else if (arg.equals("--scaling")) {
+                    scaling = true;
+                } else {
+                    System.err.println("Unknown argument: " + arg);
+                    System.exit(2);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid argument: " + arg);
+                System.exit(2);
+            }
+        }
+
+        long started = System.nanoTime();
+        CorpusGenerator generator = new CorpusGenerator(seed, 1000);
+        generator.setErrorRate(errorRate);
+        String corpus = generator.generate(lines);
+        long corpusLines = corpus.chars().filter(ch -> ch == '\n').count();
+        System.out.printf(Locale.ROOT, "Corpus: %d lines, %.1f MB, seed %d, error rate %.3f, generated in %.1f s%n",
+                corpusLines, corpus.length() / 1e6, seed, errorRate, (System.nanoTime() - started) / 1e9);
+
+        // One pass first: warms up the JIT and checks that every injected error was reported
+        Map<Diagnostic.Code, Long> reported = new EnumMap<>(Diagnostic.Code.class);
+        new SyntaxAnalyzer().analyze(corpus, (code, line, column, message) -> reported.merge(code, 1L, Long::sum));
+        for (CorpusGenerator.Error error : CorpusGenerator.Error.values()) {
+            long injected = generator.injected(error);
+            long found = reported.getOrDefault(error.code, 0L);
+            if (injected != found) {
+                System.out.printf(Locale.ROOT, "Warning: %d %s errors injected, %d %s reported%n", injected, error, found, error.code);
+            }
+        }
+
+        if (scaling) {
+            scaling(corpus, corpusLines);
+        } else {
+            soak(corpus, corpusLines, threads, TimeUnit.SECONDS.toNanos(durationSeconds), TimeUnit.SECONDS.toNanos(intervalSeconds));
+        }
+    }
+
+    // Time per line for growing prefixes of the corpus; it should stay flat
+    private static void scaling(String corpus, long corpusLines) {
+        System.out.printf("%12s %12s %12s%n", "lines", "ms/pass", "ns/line");
+        DiagnosticSink nowhere = (code, line, column, message) -> { };
+        SyntaxAnalyzer analyzer = new SyntaxAnalyzer();
+        for (int part = 8; part >= 1; part /= 2) {
+            long partLines = corpusLines / part;
+            int end = 0;
+            for (long line = 0; line < partLines; line++) {
+                end = corpus.indexOf('\n', end) + 1;
+            }
+            CharSequence text = corpus.subSequence(0, end);
+            long best = Long.MAX_VALUE;
+            for (int pass = 0; pass < 5; pass++) {
+                long passStart = System.nanoTime();
+                analyzer.analyze(text, nowhere);
+                best = Math.min(best, System.nanoTime() - passStart);
+            }
+            System.out.printf(Locale.ROOT, "%12d %12.1f %12.1f%n", partLines, best / 1e6, (double) best / partLines);
+        }
+    }
+
+    private static void soak(String corpus, long corpusLines, int threads, long durationNanos, long intervalNanos) throws InterruptedException {
+        GcWatch gc = new GcWatch();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        gc.takeInterval();
+
+        // Workers hand their latencies over after every pass
+        Histogram interval = new Histogram();
+        Histogram overall = new Histogram();
+        long[] passes = new long[1];
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                SyntaxAnalyzer analyzer = new SyntaxAnalyzer();
+                LatencySink sink = new LatencySink();
+                while (!stop.get()) {
+                    sink.start();
+                    analyzer.analyze(corpus, sink);
+                    synchronized (interval) {
+                        interval.add(sink.latencies);
+                        passes[0]++;
+                    }
+                    sink.latencies.clear();
+                }
+            }, "soak-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+
+        System.out.printf("%8s %8s %12s %10s %10s %6s %10s %10s %14s%n",
+                "time s", "passes", "lines/s", "p50 ns", "p99 ns", "GCs", "pause ms", "max ms", "heap after GC");
+        long start = System.nanoTime();
+        long last = start;
+        long lastPasses = 0;
+        long totalGcs = 0;
+        long totalPauseMillis = 0;
+        long maxPauseMillis = 0;
+        double firstRate = -1;
+        double lastRate = 0;
+        long firstHeap = -1;
+        long lastHeap = -1;
+        while (last - start < durationNanos) {
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(Math.min(intervalNanos, durationNanos - (last - start))) + 1);
+            long now = System.nanoTime();
+            long intervalPasses;
+            long p50;
+            long p99;
+            synchronized (interval) {
+                intervalPasses = passes[0] - lastPasses;
+                lastPasses = passes[0];
+                p50 = interval.percentile(0.50);
+                p99 = interval.percentile(0.99);
+                overall.add(interval);
+                interval.clear();
+            }
+            long[] collections = gc.takeInterval();
+            totalGcs += collections[0];
+            totalPauseMillis += collections[1];
+            maxPauseMillis = Math.max(maxPauseMillis, collections[2]);
+
+            double rate = intervalPasses * corpusLines / ((now - last) / 1e9);
+            if (intervalPasses > 0) {
+                if (firstRate < 0) {
+                    firstRate = rate;
+                }
+                lastRate = rate;
+            }
+            if (collections[3] >= 0) {
+                if (firstHeap < 0) {
+                    firstHeap = collections[3];
+                }
+                lastHeap = collections[3];
+            }
+            System.out.printf(Locale.ROOT, "%8.0f %8d %12.0f %10d %10d %6d %10d %10d %11.1f MB%n", (now - start) / 1e9, intervalPasses, rate,
+                    p50, p99, collections[0], collections[1], collections[2], collections[3] / (1024.0 * 1024.0));
+            last = now;
+        }
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        double seconds = (last - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%nTotal: %d passes, %.0f lines/s over %.0f s with %d thread(s)%n",
+                lastPasses, lastPasses * corpusLines / seconds, seconds, threads);
+        System.out.printf(Locale.ROOT, "Per-line latency: p50 %d ns, p99 %d ns, p99.9 %d ns%n",
+                overall.percentile(0.50), overall.percentile(0.99), overall.percentile(0.999));
+        System.out.printf(Locale.ROOT, "GC: %d pauses, %d ms in total (%.2f%% of the time), longest %d ms%n",
+                totalGcs, totalPauseMillis, totalPauseMillis / (seconds * 10), maxPauseMillis);
+        System.out.printf(Locale.ROOT, "Heap: peak %.1f MB (sum of the pool peaks), after GC %.1f MB first, %.1f MB last%n",
+                peakHeap / (1024.0 * 1024.0), firstHeap / (1024.0 * 1024.0), lastHeap / (1024.0 * 1024.0));
+        if (firstRate > 0) {
+            System.out.printf(Locale.ROOT, "Throughput: last interval %.1f%% of the first%n", lastRate / firstRate * 100);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import benchmarks.Workload;
+import java.util.Locale;
+import org.openjdk.jmh.infra.Blackhole;
+
+// The benchmarks' access to the analyzer, see benchmarks.Workload
+public class AnalyzerWorkload implements Workload {
+
+    private final SyntaxAnalyzer analyzer = new SyntaxAnalyzer();
+    private final Lexer lexer = new Lexer();
+    private Blackhole blackhole;
+    private final DiagnosticSink sink = (code, line, column, message) -> blackhole.consume(message);
+    private String corpus;
+
+    private final SymbolTable variables = new SymbolTable();
+    private final Expression expression = new Expression();
+    private final Lexer[] arithmetic = lexAll(
+            "(a + 2) * b - a / 4",
+            "-a * (b % 7) + 3.25",
+            "(int) (b * 100) % 7 == 3 || a >= count && !(b < 1)");
+    private final Lexer[] strings = lexAll(
+            "\"Total: \" + count + \" items\"",
+            "\"avg=\" + (a + b) / 2 + \" of \" + b");
+
+    public AnalyzerWorkload() {
+        variables.declare("count", SymbolTable.INT, 12, null);
+        variables.declare("a", SymbolTable.INT, 7, null);
+        variables.declare("b", SymbolTable.DOUBLE, Double.doubleToRawLongBits(2.5), null);
+    }
+
+    // The error-heavy corpus is the balanced mix with an error on every third line
+    @Override
+    public void generate(String mix, int lines, long seed) {
+        CorpusGenerator generator = new CorpusGenerator(seed, 1000);
+        boolean errors = mix.equals("errors");
+        generator.setMix(errors ? CorpusGenerator.Mix.BALANCED : CorpusGenerator.Mix.valueOf(mix.toUpperCase(Locale.ROOT)));
+        generator.setErrorRate(errors ? 0.3 : 0.02);
+        corpus = generator.generate(lines);
+    }
+
+    @Override
+    public void lex(Blackhole blackhole) {
+        lexer.lex(corpus);
+        blackhole.consume(lexer.statementCount());
+    }
+
+    @Override
+    public void analyze(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        analyzer.analyze(corpus, sink);
+    }
+
+    @Override
+    public void evaluateArithmetic(Blackhole blackhole) {
+        evaluate(arithmetic, blackhole);
+    }
+
+    @Override
+    public void evaluateStrings(Blackhole blackhole) {
+        evaluate(strings, blackhole);
+    }
+
+    private void evaluate(Lexer[] expressions, Blackhole blackhole) {
+        for (Lexer tokens : expressions) {
+            blackhole.consume(expression.evaluateAll(tokens, 0, tokens.endToken(0), variables));
+            blackhole.consume(expression.value);
+            blackhole.consume(expression.string);
+        }
+    }
+
+    private static Lexer[] lexAll(String... expressions) {
+        Lexer[] lexed = new Lexer[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            lexed[i] = new Lexer();
+            lexed[i].lex(expressions[i]);
+        }
+        return lexed;
+    }
+}
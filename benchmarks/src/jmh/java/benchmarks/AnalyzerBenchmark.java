@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Lexing and the whole analysis over generated corpora of two sizes in four mixes. The declaration-
+// and print-heavy corpora mostly exercise the declaration and print handlers, the error-heavy one
+// the error paths. One operation is the whole corpus.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class AnalyzerBenchmark {
+
+    @Param({"1000", "100000"})
+    int lines;
+
+    @Param({"declarations", "prints", "comments", "errors"})
+    String mix;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create();
+        workload.generate(mix, lines, 42);
+    }
+
+    @Benchmark
+    public void lex(Blackhole blackhole) {
+        workload.lex(blackhole);
+    }
+
+    @Benchmark
+    public void analyze(Blackhole blackhole) {
+        workload.analyze(blackhole);
+    }
+}
@@ -0,0 +1,33 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Expression evaluation on its own, over expressions lexed once: the work behind initializers,
+// assigned values and print arguments without the statement handling around it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ExpressionBenchmark {
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create();
+    }
+
+    @Benchmark
+    public void evaluateArithmetic(Blackhole blackhole) {
+        workload.evaluateArithmetic(blackhole);
+    }
+
+    @Benchmark
+    public void evaluateStrings(Blackhole blackhole) {
+        workload.evaluateStrings(blackhole);
+    }
+}
@@ -0,0 +1,32 @@
+package benchmarks;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+// JMH only takes benchmarks in a named package, and code in a named package cannot refer to the
+// analyzer's classes in the default package. The benchmarks therefore drive the analyzer through this
+// interface, implemented by AnalyzerWorkload in the default package; only creating it is reflective.
+public interface Workload {
+
+    static Workload create() {
+        try {
+            return (Workload) Class.forName("AnalyzerWorkload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("AnalyzerWorkload is not on the class path", e);
+        }
+    }
+
+    // Generates the corpus: mix is declarations, prints, comments or errors
+    void generate(String mix, int lines, long seed);
+
+    // Tokenizes the corpus
+    void lex(Blackhole blackhole);
+
+    // Analyzes the corpus, every diagnostic goes to the blackhole
+    void analyze(Blackhole blackhole);
+
+    // Evaluates a set of arithmetic, relational and logical expressions
+    void evaluateArithmetic(Blackhole blackhole);
+
+    // Evaluates a set of String concatenations
+    void evaluateStrings(Blackhole blackhole);
+}
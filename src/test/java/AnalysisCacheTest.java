@@ -0,0 +1,148 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// The cache has to replay exactly what the analysis reports, drop the least recently used results from
+// both tiers, and never replay a disk entry of another version or one that cannot be read.
+// Hits and misses are read from the global metrics.
+class AnalysisCacheTest {
+
+    private static final String[] BLOCKS = {"int a1 = 1;\n", "int a2 = 2;\n", "int a3 = 3;\n", "int a4 = 4;\n"};
+
+    @TempDir
+    Path directory;
+
+    private long hits;
+    private long diskHits;
+
+    @BeforeEach
+    void enableMetrics() {
+        AnalyzerMetrics.GLOBAL.reset();
+        AnalyzerMetrics.GLOBAL.setEnabled(true);
+    }
+
+    @AfterEach
+    void disableMetrics() {
+        AnalyzerMetrics.GLOBAL.setEnabled(false);
+        AnalyzerMetrics.GLOBAL.reset();
+    }
+
+    // Analyzes the block through the cache, checks the result against the analysis and returns whether it
+    // was a hit (memory or disk)
+    private boolean analyze(AnalysisCache cache, String block) {
+        assertEquals(new SyntaxAnalyzer().analyze(block).toString(), cache.analyze(block, new Diagnostics()).toString(), block);
+        long hitsBefore = hits;
+        hits = AnalyzerMetrics.GLOBAL.getCacheHits();
+        diskHits = AnalyzerMetrics.GLOBAL.getCacheDiskHits();
+        return hits > hitsBefore;
+    }
+
+    private Path entry(String block) {
+        return directory.resolve(AnalysisCache.key(block) + ".sac");
+    }
+
+    @Test
+    void memoryEvictsLeastRecentlyUsed() {
+        AnalysisCache probe = new AnalysisCache(1 << 20);
+        analyze(probe, BLOCKS[0]);
+        long entrySize = probe.memoryUsed();
+
+        AnalysisCache cache = new AnalysisCache(3 * entrySize + entrySize / 2);
+        assertFalse(analyze(cache, BLOCKS[0]));
+        assertFalse(analyze(cache, BLOCKS[1]));
+        assertFalse(analyze(cache, BLOCKS[2]));
+        assertTrue(analyze(cache, BLOCKS[0]));
+        assertFalse(analyze(cache, BLOCKS[3])); // drops BLOCKS[1], used longest ago
+        assertEquals(3 * entrySize, cache.memoryUsed());
+        assertTrue(analyze(cache, BLOCKS[0]));
+        assertTrue(analyze(cache, BLOCKS[2]));
+        assertTrue(analyze(cache, BLOCKS[3]));
+        assertFalse(analyze(cache, BLOCKS[1]));
+    }
+
+    @Test
+    void diskEvictsLeastRecentlyUsed() throws IOException {
+        // Nothing fits in memory, every lookup goes to the disk
+        AnalysisCache probe = new AnalysisCache(0, directory.resolve("probe"), 1 << 20);
+        analyze(probe, BLOCKS[0]);
+        long entrySize = probe.diskUsed();
+
+        AnalysisCache cache = new AnalysisCache(0, directory, 3 * entrySize + entrySize / 2);
+        assertFalse(analyze(cache, BLOCKS[0]));
+        assertFalse(analyze(cache, BLOCKS[1]));
+        assertFalse(analyze(cache, BLOCKS[2]));
+        assertTrue(analyze(cache, BLOCKS[0]));
+        assertEquals(1, diskHits);
+        assertFalse(analyze(cache, BLOCKS[3]));
+        assertEquals(3 * entrySize, cache.diskUsed());
+        assertFalse(Files.exists(entry(BLOCKS[1])));
+        assertTrue(Files.exists(entry(BLOCKS[0])));
+
+        // After a restart the order comes from the modification times
+        Files.setLastModifiedTime(entry(BLOCKS[0]), FileTime.fromMillis(3000));
+        Files.setLastModifiedTime(entry(BLOCKS[2]), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(entry(BLOCKS[3]), FileTime.fromMillis(2000));
+        Files.writeString(directory.resolve("left.1.tmp"), "half written");
+        AnalysisCache restarted = new AnalysisCache(0, directory, 2 * entrySize + entrySize / 2);
+        assertEquals(2 * entrySize, restarted.diskUsed());
+        assertFalse(Files.exists(entry(BLOCKS[2])));
+        assertFalse(Files.exists(directory.resolve("left.1.tmp")));
+        assertTrue(analyze(restarted, BLOCKS[0]));
+        assertTrue(analyze(restarted, BLOCKS[3]));
+        assertFalse(analyze(restarted, BLOCKS[2]));
+    }
+
+    // An entry written by another version of the analyzer has the same name, its results are not used
+    @Test
+    void entryOfOtherVersionNotReplayed() throws IOException {
+        String block = BLOCKS[0];
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(entry(block)))) {
+            out.writeBytes("SAC");
+            out.writeByte(AnalysisCache.VERSION - 1);
+            out.writeInt(1);
+            out.writeByte(Diagnostic.Code.VALID_DECLARATION.ordinal());
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeInt(5);
+            out.writeBytes("stale");
+        }
+
+        AnalysisCache cache = new AnalysisCache(0, directory, 1 << 20);
+        assertFalse(analyze(cache, block));
+        try (InputStream in = Files.newInputStream(entry(block))) {
+            assertEquals(AnalysisCache.VERSION, in.readNBytes(4)[3]);
+        }
+        assertTrue(analyze(new AnalysisCache(0, directory, 1 << 20), block));
+    }
+
+    @Test
+    void corruptEntriesDropped() throws IOException {
+        Files.write(entry(BLOCKS[0]), new byte[] {'S', 'A', 'C', AnalysisCache.VERSION, 0, 0, 0, 5, 0});
+        Files.write(entry(BLOCKS[1]), new byte[] {'S', 'A', 'C', AnalysisCache.VERSION, 0, 0, 0, 1, (byte) 0xFF, 0, 0, 0, 1});
+        Files.writeString(entry(BLOCKS[2]), "not a cached result at all");
+        Files.write(entry(BLOCKS[3]), new byte[0]);
+
+        AnalysisCache cache = new AnalysisCache(0, directory, 1 << 20);
+        for (String block : BLOCKS) {
+            assertFalse(analyze(cache, block));
+        }
+        // Stored again, readable this time
+        AnalysisCache restarted = new AnalysisCache(0, directory, 1 << 20);
+        for (String block : BLOCKS) {
+            assertTrue(analyze(restarted, block));
+        }
+        assertEquals(4, diskHits);
+    }
+}
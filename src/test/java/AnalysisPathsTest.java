@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// The block analysis of text in memory, the streaming analysis of a Reader or InputStream, the mapped
+// analysis of a file, the analysis of a file in shards and the incremental analysis read the same text
+// differently, they have to report the same diagnostics.
+class AnalysisPathsTest {
+
+    @TempDir
+    Path directory;
+
+    private String assertSamePaths(String code) throws IOException {
+        String block = new SyntaxAnalyzer().analyze(code).toString();
+        assertEquals(block, new SyntaxAnalyzer().analyze(new StringReader(code)).toString(), "Reader");
+        assertEquals(block, new SyntaxAnalyzer().analyze(
+                new ByteArrayInputStream(code.getBytes(StandardCharsets.UTF_8))).toString(), "InputStream");
+        assertEquals(block, new IncrementalAnalyzer().update(code).toString(), "incremental");
+
+        Path file = directory.resolve("code.txt");
+        Files.writeString(file, code);
+        assertEquals(block, new SyntaxAnalyzer().analyzeMapped(file, new Diagnostics()).toString(), "mapped");
+        StringBuilder shards = new StringBuilder();
+        AnalysisSnapshot snapshot = null;
+        long size = Files.size(file);
+        for (int shard = 1; shard <= 3; shard++) {
+            Diagnostics diagnostics = new Diagnostics();
+            snapshot = new SyntaxAnalyzer().analyzeFile(file, snapshot, size * shard / 3, diagnostics);
+            shards.append(diagnostics);
+        }
+        assertEquals(block, shards.toString(), "shards");
+        return block;
+    }
+
+    private static String lines(String first, String line, int count, String last) {
+        StringBuilder code = new StringBuilder(first).append('\n');
+        for (int i = 0; i < count; i++) {
+            code.append(line.replace("#", Integer.toString(i))).append('\n');
+        }
+        return code.append(last).append('\n').append("print a;\n").toString();
+    }
+
+    @Test
+    void bracketClosedAfterReadAheadLimit() throws IOException {
+        assertSamePaths(lines("int a = {1;", "int x# = #;", 300, "};"));
+    }
+
+    @Test
+    void bracketClosedWithinReadAheadLimit() throws IOException {
+        assertSamePaths(lines("int a = {1;", "int x# = #;", 100, "};"));
+    }
+
+    @Test
+    void classBodyLongerThanReadAheadLimit() throws IOException {
+        String result = assertSamePaths(lines("class A {", "int x# = #;", 600, "}"));
+        assertFalse(result.contains("Unclosed"), result);
+        assertFalse(result.contains("Unmatched"), result);
+    }
+
+    @Test
+    void nestedBracesLeftOpen() throws IOException {
+        String result = assertSamePaths(lines("class A {", "{ int x# = #;", 300, "}"));
+        assertEquals(300, result.split("Unclosed '\\{'", -1).length - 1, result);
+    }
+
+    @Test
+    void expressionContinuedAfterReadAheadLimit() throws IOException {
+        assertSamePaths(lines("int a = (1 +", "# +", 300, "2);"));
+    }
+
+    @Test
+    void commentClosedAfterReadAheadLimit() throws IOException {
+        assertSamePaths(lines("/* comment", "text #", 400, "*/ int a = 1;"));
+    }
+
+    @Test
+    void bracketNeverClosed() throws IOException {
+        assertSamePaths(lines("int b = 1;", "int x# = (#;", 300, "int a = 2;"));
+    }
+
+    @Test
+    void generatedCorpus() throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(42, 64);
+        generator.setErrorRate(0.1);
+        assertSamePaths(generator.generate(20000));
+    }
+
+    // Only the incremental analysis logs symbol table writes, a plain analysis of any length keeps no log
+    @Test
+    void writeLogEmptyInPlainAnalysis() throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(9, 64);
+        String code = generator.generate(50000);
+        SyntaxAnalyzer analyzer = new SyntaxAnalyzer();
+        int[] logged = new int[1];
+        DiagnosticSink sink = (diagnosticCode, line, column, message) ->
+                logged[0] = Math.max(logged[0], analyzer.variables().writtenCount());
+        analyzer.analyze(code, sink);
+        analyzer.analyze(new StringReader(code), sink);
+        analyzer.analyze(new ByteArrayInputStream(code.getBytes(StandardCharsets.UTF_8)), sink);
+        Path file = directory.resolve("code.txt");
+        Files.writeString(file, code);
+        analyzer.analyzeMapped(file, sink);
+        assertEquals(0, logged[0]);
+        assertEquals(0, analyzer.variables().writtenCount());
+    }
+
+    // Long enough for the parallel analysis, whose chunks end inside class bodies
+    @Test
+    void classBodiesAcrossParallelChunks() throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(7, 64);
+        StringBuilder code = new StringBuilder();
+        for (int body = 0; body < 200; body++) {
+            code.append("class C").append(body).append(" {\n");
+            code.append(generator.generate(2000));
+            code.append("}\n");
+        }
+        assertSamePaths(code.toString());
+    }
+}
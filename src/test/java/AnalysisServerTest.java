@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Pipelined requests over loopback TCP are answered in order, and a request over the size limit is
+// answered with an error without closing the connection or stopping the server.
+class AnalysisServerTest {
+
+    private static final int MAX_REQUEST_SIZE = 16 * 1024;
+
+    private ServerSocketChannel channel;
+    private Thread server;
+
+    @BeforeEach
+    void start() throws IOException {
+        channel = AnalysisServer.bind("0");
+        AnalysisServer analysisServer = new AnalysisServer("text", null, MAX_REQUEST_SIZE);
+        server = new Thread(() -> {
+            try {
+                analysisServer.serve(channel);
+            } catch (IOException e) {
+                // Closed by stop
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException, InterruptedException {
+        channel.close();
+        server.join(10_000);
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        socket.connect(channel.getLocalAddress());
+        socket.setSoTimeout(30_000);
+        return socket;
+    }
+
+    // The response lines up to the end-of-batch marker
+    private static String response(BufferedReader in) throws IOException {
+        StringBuilder response = new StringBuilder();
+        for (String line = in.readLine(); !line.equals("done"); line = in.readLine()) {
+            response.append(line).append(System.lineSeparator());
+        }
+        return response.toString();
+    }
+
+    private static String expected(String request) {
+        return new SyntaxAnalyzer().analyze(request).toString();
+    }
+
+    @Test
+    void oversizedRequestAnsweredWithError() throws IOException {
+        String first = "int a = 1;\nSystem.out.println(a + 1);\n";
+        String second = "int b = ;\nString s = \"x\";\n";
+        StringBuilder manyLines = new StringBuilder();
+        while (manyLines.length() <= 2 * MAX_REQUEST_SIZE) {
+            manyLines.append("int c = 2;\n");
+        }
+        StringBuilder oneLine = new StringBuilder("// ");
+        while (oneLine.length() <= 2 * MAX_REQUEST_SIZE) {
+            oneLine.append("comment ");
+        }
+        oneLine.append('\n');
+        String last = "int d = 4;\n";
+
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            // All of it at once, pipelined
+            String requests = first + "done\n" + second + "done\n" + manyLines + "done\n" + oneLine + "done\n" + last + "done\n";
+            out.write(requests.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            assertEquals(expected(first), response(in));
+            assertEquals(expected(second), response(in));
+            String tooLarge = response(in);
+            assertTrue(tooLarge.contains("Request too large"), tooLarge);
+            tooLarge = response(in);
+            assertTrue(tooLarge.contains("Request too large"), tooLarge);
+            assertEquals(expected(last), response(in));
+
+            // The connection still takes requests
+            out.write((first + "done\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertEquals(expected(first), response(in));
+            out.write("quit\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertNull(in.readLine());
+        }
+
+        // And the server still takes connections
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write((second + "done\n").getBytes(StandardCharsets.UTF_8));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals(expected(second), response(in));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// A snapshot written to disk and read back has to resume the analysis exactly where it stopped, and has
+// to refuse a file that is not the one it was taken of.
+class AnalysisSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private Path write(String name, String code) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, code);
+        return file;
+    }
+
+    private static String code() {
+        CorpusGenerator generator = new CorpusGenerator(23, 32);
+        generator.setErrorRate(0.1);
+        return "class A {\n" + generator.generate(2000) + "}\n" + generator.generate(500);
+    }
+
+    @Test
+    void resumedFromFileGivesFullAnalysis() throws IOException {
+        String code = code();
+        Path file = write("code.txt", code);
+        long size = Files.size(file);
+        Diagnostics first = new Diagnostics();
+        AnalysisSnapshot taken = new SyntaxAnalyzer().analyzeFile(file, null, size / 3, first);
+        Path snapshotFile = directory.resolve("code.sas");
+        taken.write(snapshotFile);
+
+        AnalysisSnapshot read = AnalysisSnapshot.read(snapshotFile);
+        assertEquals(taken.lineNumber(), read.lineNumber());
+        assertEquals(taken.offset(), read.offset());
+        assertTrue(read.resumesInto(file));
+        Diagnostics rest = new Diagnostics();
+        AnalysisSnapshot end = new SyntaxAnalyzer().analyzeFile(file, read, size, rest);
+        assertEquals(size, end.offset());
+        assertEquals(new SyntaxAnalyzer().analyze(code).toString(), first.toString() + rest);
+    }
+
+    @Test
+    void rewrittenFileRejected() throws IOException {
+        String code = code();
+        Path file = write("code.txt", code);
+        AnalysisSnapshot snapshot = new SyntaxAnalyzer().analyzeFile(file, null, Files.size(file) / 2, new Diagnostics());
+        Path snapshotFile = directory.resolve("code.sas");
+        snapshot.write(snapshotFile);
+        snapshot = AnalysisSnapshot.read(snapshotFile);
+
+        // Grown at the end: still the same file
+        Files.writeString(file, code + "int grown = 1;\n");
+        assertTrue(snapshot.resumesInto(file));
+        // Changed in front of the offset
+        int changed = (int) snapshot.offset() - 10;
+        Files.writeString(file, code.substring(0, changed) + '#' + code.substring(changed + 1));
+        assertFalse(snapshot.resumesInto(file));
+        // Shorter than the offset
+        Files.writeString(file, code.substring(0, (int) snapshot.offset() - 1));
+        assertFalse(snapshot.resumesInto(file));
+    }
+
+    @Test
+    void unknownTypeRejected() throws IOException {
+        Path file = write("code.txt", "int a = 1;\n");
+        Path snapshotFile = directory.resolve("code.sas");
+        new SyntaxAnalyzer().analyzeFile(file, null, Files.size(file), new Diagnostics()).write(snapshotFile);
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        // Header of 28 bytes, then the name "a" as its length and its byte, then the type
+        assertEquals(SymbolTable.INT, bytes[33]);
+        assertEquals("a", new String(bytes, 32, 1, StandardCharsets.UTF_8));
+
+        bytes[33] = 42;
+        Files.write(snapshotFile, bytes);
+        assertThrows(IOException.class, () -> AnalysisSnapshot.read(snapshotFile));
+        bytes[33] = SymbolTable.UNKNOWN;
+        Files.write(snapshotFile, bytes);
+        assertThrows(IOException.class, () -> AnalysisSnapshot.read(snapshotFile));
+        bytes[3] = 1;
+        Files.write(snapshotFile, bytes);
+        assertThrows(IOException.class, () -> AnalysisSnapshot.read(snapshotFile));
+    }
+}
@@ -0,0 +1,97 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+// Expressions have to evaluate the way Java evaluates them: the types, the conversions and the errors.
+class ExpressionTest {
+
+    private final SymbolTable variables = new SymbolTable();
+    private final Expression expression = new Expression();
+
+    private boolean evaluate(String text) {
+        Lexer lexer = new Lexer();
+        lexer.lex(text);
+        return expression.evaluateAll(lexer, 0, lexer.endToken(0), variables);
+    }
+
+    private void assertValue(String text, byte type, String formatted) {
+        assertTrue(evaluate(text), () -> text + ": " + expression.errorMessage);
+        assertEquals(Expression.typeName(type), Expression.typeName(expression.type), text);
+        assertEquals(formatted, expression.format(), text);
+    }
+
+    private void assertDivisionByZero(String text) {
+        assertFalse(evaluate(text), text);
+        assertEquals(Diagnostic.Code.INVALID_EXPRESSION, expression.errorCode, text);
+        assertEquals("Invalid expression: Division by zero", expression.errorMessage, text);
+    }
+
+    @Test
+    void binaryNumericPromotion() {
+        assertValue("'a' + 1", SymbolTable.INT, "98");
+        assertValue("'a' + 'b'", SymbolTable.INT, "195");
+        assertValue("7 / 2", SymbolTable.INT, "3");
+        assertValue("7 / 2.0", SymbolTable.DOUBLE, "3.5");
+        assertValue("2.5 * 2", SymbolTable.DOUBLE, "5.0");
+        assertValue("2147483647 + 1", SymbolTable.INT, "-2147483648");
+        assertValue("\"\" + 'a' + 'b'", SymbolTable.STRING, "ab");
+        assertValue("1 + 2 + \"x\" + 1 + 2", SymbolTable.STRING, "3x12");
+    }
+
+    @Test
+    void narrowingCasts() {
+        assertValue("(byte) 200", SymbolTable.BYTE, "-56");
+        assertValue("(short) 70000", SymbolTable.SHORT, "4464");
+        assertValue("(int) 3.9", SymbolTable.INT, "3");
+        assertValue("(int) -2.5", SymbolTable.INT, "-2");
+        assertValue("(char) 98", SymbolTable.CHAR, "b");
+        assertValue("(long) 3.9", SymbolTable.LONG, "3");
+        assertValue("(float) 0.1", SymbolTable.FLOAT, "0.1");
+    }
+
+    @Test
+    void compoundAssignmentOnCharAndString() {
+        String code = "char c = 'a';\nc += 1;\nString s = \"x\";\ns += 1;\ns += 'c';\nSystem.out.println(c + \" \" + s);\n";
+        assertEquals("Line 1: Syntax is Valid, char c = a" + System.lineSeparator()
+                + "Line 2: Syntax is Valid, c = b" + System.lineSeparator()
+                + "Line 3: Syntax is Valid, String s = x" + System.lineSeparator()
+                + "Line 4: Syntax is Valid, s = x1" + System.lineSeparator()
+                + "Line 5: Syntax is Valid, s = x1c" + System.lineSeparator()
+                + "Line 6: Syntax is Valid, System.out.println statement, Output: b x1c" + System.lineSeparator(),
+                new SyntaxAnalyzer().analyze(code).toString());
+    }
+
+    @Test
+    void divisionByZero() {
+        assertDivisionByZero("1 / 0");
+        assertDivisionByZero("1 % 0");
+        assertDivisionByZero("'a' / 0");
+        assertValue("1.0 / 0", SymbolTable.DOUBLE, "Infinity");
+        assertValue("1 / 0.0", SymbolTable.DOUBLE, "Infinity");
+        assertValue("0.0 / 0", SymbolTable.DOUBLE, "NaN");
+    }
+
+    // The right operand of a && or || the left one decides is not run, as in Java
+    @Test
+    void shortCircuitSkipsRightOperand() {
+        assertValue("false && 1 / 0 == 0", SymbolTable.BOOLEAN, "false");
+        assertValue("true || 1 / 0 == 0", SymbolTable.BOOLEAN, "true");
+        assertDivisionByZero("true && 1 / 0 == 0");
+        assertDivisionByZero("false || 1 / 0 == 0");
+    }
+
+    // A result that is not a String must not keep the String of the expression before
+    @Test
+    void noStaleString() {
+        variables.declare("n", SymbolTable.INT, 5, null);
+        String[] notStrings = {"5", "2.5", "'c'", "true", "n", "n * 2.0", "-n", "n == 5", "(int) 2.5"};
+        for (String text : notStrings) {
+            assertValue("\"hello\" + \"world\"", SymbolTable.STRING, "helloworld");
+            assertTrue(evaluate(text), text);
+            assertNull(expression.string, text);
+        }
+    }
+}
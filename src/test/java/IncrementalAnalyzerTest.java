@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// After every update the incremental analysis has to report what a fresh analysis of the whole text does,
+// however much of it came from the cache or was taken over from the version before.
+class IncrementalAnalyzerTest {
+
+    private static void assertSameAsFull(Diagnostics diagnostics, String text) {
+        assertEquals(new SyntaxAnalyzer().analyze(text).toString(), diagnostics.toString(), text);
+    }
+
+    @Test
+    void valuesSwappedBetweenVariables() {
+        IncrementalAnalyzer incremental = new IncrementalAnalyzer();
+        String before = "int a = 0;\nint b = 1;\nString s = \"x\";\nString t = \"y\";\nint c = 10 / a;\nint d = 10 / b;\n"
+                + "String u = s + t;\n";
+        String after = "int a = 1;\nint b = 0;\nString s = \"y\";\nString t = \"x\";\nint c = 10 / a;\nint d = 10 / b;\n"
+                + "String u = s + t;\n";
+        assertSameAsFull(incremental.update(before), before);
+        assertSameAsFull(incremental.update(after), after);
+        assertSameAsFull(incremental.update(before), before);
+    }
+
+    @Test
+    void unchangedTailTakenOverWithNewLineNumbers() {
+        IncrementalAnalyzer incremental = new IncrementalAnalyzer();
+        CorpusGenerator generator = new CorpusGenerator(5, 32);
+        generator.setErrorRate(0.1);
+        String text = generator.generate(2000);
+        assertSameAsFull(incremental.update(text), text);
+
+        String inserted = "// note\n// note\n" + text;
+        assertSameAsFull(incremental.edit(0, 0, "// note\n// note"), inserted);
+        assertSameAsFull(incremental.edit(0, 2, ""), "\n" + text);
+        assertSameAsFull(incremental.edit(0, 1, "class A {"), "class A {\n" + text);
+        assertSameAsFull(incremental.edit(0, 1, "int"), "int\n" + text);
+    }
+
+    // The variables coming into the unchanged lines are the same, the braces are not
+    @Test
+    void braceOpenedBeforeUnchangedTail() {
+        IncrementalAnalyzer incremental = new IncrementalAnalyzer();
+        String text = "int a = 1;\nint b = 2;\n}\nprint a;\n";
+        assertSameAsFull(incremental.update(text), text);
+        assertSameAsFull(incremental.edit(1, 1, "class A {"), "int a = 1;\nclass A {\nint b = 2;\n}\nprint a;\n");
+        assertSameAsFull(incremental.edit(1, 2, ""), "int a = 1;\n\nint b = 2;\n}\nprint a;\n");
+    }
+
+    @Test
+    void randomEditsMatchFullAnalysis() {
+        CorpusGenerator generator = new CorpusGenerator(11, 32);
+        generator.setErrorRate(0.1);
+        List<String> lines = new ArrayList<>(Arrays.asList(generator.generate(3000).split("\n", -1)));
+        String[] snippets = {"{", "}", "class A {", "/*", "*/", "int x = (1 +", "2);", "", "// comment", "print \"a\";"};
+
+        IncrementalAnalyzer incremental = new IncrementalAnalyzer();
+        assertSameAsFull(incremental.update(String.join("\n", lines)), String.join("\n", lines));
+        Random random = new Random(17);
+        for (int edit = 0; edit < 300; edit++) {
+            int start = random.nextInt(lines.size() + 1);
+            int end = Math.min(lines.size(), start + random.nextInt(4));
+            String replacement;
+            switch (random.nextInt(4)) {
+                case 0:
+                    replacement = snippets[random.nextInt(snippets.length)];
+                    break;
+                case 1:
+                    int from = random.nextInt(lines.size());
+                    replacement = String.join("\n", lines.subList(from, Math.min(lines.size(), from + 1 + random.nextInt(3))));
+                    break;
+                case 2:
+                    String generated = generator.generate(1 + random.nextInt(3));
+                    replacement = generated.substring(0, generated.length() - 1);
+                    break;
+                default:
+                    replacement = "";
+                    break;
+            }
+            Diagnostics diagnostics = incremental.edit(start, end, replacement);
+            lines.subList(start, end).clear();
+            lines.addAll(start, Arrays.asList(replacement.split("\n", -1)));
+            assertSameAsFull(diagnostics, String.join("\n", lines));
+        }
+    }
+}
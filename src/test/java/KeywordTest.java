@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// The perfect hash has to find every keyword, and nothing else: a word is a keyword only when it is
+// spelled exactly like one.
+class KeywordTest {
+
+    // What the word is, by comparing it with every keyword
+    private static Keyword expected(String word) {
+        for (Keyword keyword : Keyword.values()) {
+            if (keyword != Keyword.NONE && keyword.text.equals(word)) {
+                return keyword;
+            }
+        }
+        return Keyword.NONE;
+    }
+
+    private static void assertClassified(String word) {
+        assertEquals(expected(word), Keyword.of(word), word);
+        String text = "(" + word + ")";
+        assertEquals(expected(word), Keyword.lookup(word.hashCode(), text, 1, 1 + word.length()), text);
+    }
+
+    @Test
+    void everyKeywordMapsToItself() {
+        for (Keyword keyword : Keyword.values()) {
+            if (keyword == Keyword.NONE) {
+                continue;
+            }
+            assertEquals(keyword, Keyword.of(keyword.text));
+            Lexer lexer = new Lexer();
+            lexer.lex("a " + keyword.text + " b");
+            assertEquals(keyword, lexer.keyword(1), keyword.text);
+            assertEquals(Keyword.NONE, lexer.keyword(0));
+        }
+    }
+
+    @Test
+    void nearMissesAreNotKeywords() {
+        for (String word : new String[] {"Int", "INT", "string", "STRING", "system", "Print", "True", "NULL", "Class",
+                "", "x", "_int", "int_", "int2", "$for"}) {
+            assertClassified(word);
+        }
+        for (Keyword keyword : Keyword.values()) {
+            if (keyword == Keyword.NONE) {
+                continue;
+            }
+            String text = keyword.text;
+            // Prefixes and extensions, some of them keywords themselves (do/double, print/println)
+            for (int length = 0; length < text.length(); length++) {
+                assertClassified(text.substring(0, length));
+            }
+            assertClassified(text + "s");
+            assertClassified(text + "x");
+            assertClassified("x" + text);
+            assertClassified(Character.toUpperCase(text.charAt(0)) + text.substring(1));
+            assertClassified(Character.toLowerCase(text.charAt(0)) + text.substring(1));
+        }
+    }
+
+    // Words with the hash of a keyword land in its slot, the characters have to tell them apart
+    @Test
+    void sameHashAsKeywordIsNotKeyword() {
+        for (Keyword keyword : Keyword.values()) {
+            if (keyword == Keyword.NONE) {
+                continue;
+            }
+            for (String word : sameHash(keyword.text)) {
+                assertEquals(keyword.text.hashCode(), word.hashCode());
+                assertNotEquals(keyword.text, word);
+                assertEquals(Keyword.NONE, Keyword.of(word), word);
+            }
+        }
+    }
+
+    // Raising one character by 1 and lowering the next by 31 keeps String.hashCode
+    private static List<String> sameHash(String text) {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i + 1 < text.length(); i++) {
+            char[] chars = text.toCharArray();
+            chars[i]++;
+            chars[i + 1] -= 31;
+            words.add(new String(chars));
+        }
+        return words;
+    }
+}
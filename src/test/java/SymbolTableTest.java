@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+// The table has to keep every variable through growing, and its fingerprint has to depend on the
+// contents only, not on the order they were written in.
+class SymbolTableTest {
+
+    private static final int COUNT = 1000; // grows the table of 64 slots several times
+
+    @Test
+    void growsPastLoadFactor() {
+        SymbolTable variables = new SymbolTable();
+        variables.recordWrites(true);
+        for (int i = 0; i < COUNT; i++) {
+            variables.declare("v" + i, i % 2 == 0 ? SymbolTable.INT : SymbolTable.STRING, i, "s" + i);
+        }
+        assertEquals(COUNT, variables.size());
+        for (int i = 0; i < COUNT; i++) {
+            int slot = variables.find("v" + i);
+            assertEquals("v" + i, variables.name(slot));
+            assertEquals(i, variables.longValue(slot));
+            assertEquals(i % 2 == 0 ? null : "s" + i, variables.stringValue(slot));
+        }
+        assertEquals(-1, variables.find("v" + COUNT));
+        assertEquals(variables.find("v12"), variables.find("(v12)", 1, 4));
+
+        // The write log follows the slots as they move
+        assertEquals(COUNT, variables.writtenCount());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals("v" + i, variables.name(variables.written(i)));
+        }
+
+        int visited = 0;
+        for (int slot = variables.nextSlot(-1); slot != -1; slot = variables.nextSlot(slot)) {
+            visited++;
+        }
+        assertEquals(COUNT, visited);
+    }
+
+    @Test
+    void fingerprintIndependentOfInsertionOrder() {
+        SymbolTable forward = new SymbolTable();
+        SymbolTable backward = new SymbolTable();
+        for (int i = 0; i < COUNT; i++) {
+            forward.declare("v" + i, SymbolTable.LONG, i, null);
+        }
+        for (int i = COUNT - 1; i >= 0; i--) {
+            backward.declare("v" + i, SymbolTable.LONG, -i, null);
+        }
+        assertNotEquals(forward.fingerprint(), backward.fingerprint());
+        for (int i = 0; i < COUNT; i++) {
+            backward.assign(backward.find("v" + i), i, null);
+        }
+        assertEquals(forward.fingerprint(), backward.fingerprint());
+        assertEquals(forward.fingerprint(), forward.copy().fingerprint());
+
+        // Swapping the values of two variables is a different table
+        forward.assign(forward.find("v1"), 2, null);
+        forward.assign(forward.find("v2"), 1, null);
+        assertNotEquals(backward.fingerprint(), forward.fingerprint());
+        forward.assign(forward.find("v1"), 1, null);
+        forward.assign(forward.find("v2"), 2, null);
+        assertEquals(backward.fingerprint(), forward.fingerprint());
+
+        forward.clear();
+        assertEquals(new SymbolTable().fingerprint(), forward.fingerprint());
+    }
+
+    // Only a String variable keeps a string
+    @Test
+    void stringOnlyKeptForStrings() {
+        SymbolTable variables = new SymbolTable();
+        int slot = variables.declare("n", SymbolTable.INT, 5, "stale");
+        assertNull(variables.stringValue(slot));
+        slot = variables.declare("s", SymbolTable.STRING, 0, "text");
+        assertEquals("text", variables.stringValue(slot));
+        variables.assign(variables.find("n"), 6, "stale");
+        assertNull(variables.stringValue(variables.find("n")));
+    }
+}